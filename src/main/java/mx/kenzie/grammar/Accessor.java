@@ -0,0 +1,37 @@
+package mx.kenzie.grammar;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A readable field (or record component) of a class, with its marshalled key and type.
+ * The accessors of a class are planned once, in a stable order, and reused for every object.
+ */
+final class Accessor {
+
+    final AccessibleObject member;
+    final String key;
+    final Class<?> type;
+    final boolean optional, any;
+
+    Accessor(AccessibleObject member, String key, Class<?> type, boolean optional, boolean any) {
+        this.member = member;
+        this.key = key;
+        this.type = type;
+        this.optional = optional;
+        this.any = any;
+    }
+
+    Object get(Object object) throws IllegalAccessException, InvocationTargetException {
+        if (member instanceof Field field) return field.get(object);
+        return ((Method) member).invoke(object);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+
+}
@@ -0,0 +1,50 @@
+package mx.kenzie.grammar;
+
+/**
+ * Tracks the resources used by the current unmarshal call against its {@link Limits}.
+ * Each thread keeps its own budget, which is reset when a new top-level call begins.
+ * During an iterative traversal nested data is entered from the work stack,
+ * so each deferred task restores the depth it was deferred at.
+ */
+final class Budget {
+
+    private Limits limits;
+    private int depth, objects;
+
+    /**
+     * Starts counting a new top-level call.
+     */
+    void reset(Limits limits) {
+        this.limits = limits;
+        this.depth = 0;
+        this.objects = 0;
+    }
+
+    /**
+     * Enters one level of nesting, holding {@param elements} entries.
+     * Unless the call is part of a larger traversal, entering the top level starts a new count.
+     */
+    void enter(Limits limits, int elements, boolean fresh) {
+        if (depth == 0 && fresh) this.reset(limits);
+        if (depth >= this.limits.depth())
+            throw new LimitException("Data is nested deeper than " + this.limits.depth() + " levels.");
+        if (elements > this.limits.elements())
+            throw new LimitException("Data has " + elements + " entries, more than " + this.limits.elements() + '.');
+        if (++objects > this.limits.objects())
+            throw new LimitException("Data creates more than " + this.limits.objects() + " objects.");
+        this.depth++;
+    }
+
+    void exit() {
+        this.depth--;
+    }
+
+    int depth() {
+        return depth;
+    }
+
+    void depth(int depth) {
+        this.depth = depth;
+    }
+
+}
@@ -0,0 +1,40 @@
+package mx.kenzie.grammar;
+
+import java.util.Map;
+
+/**
+ * A reusable {@link StreamMarshalled.Sink} and {@link StreamMarshalled.Source} over the container
+ * currently being (un)marshalled, so that streaming an object does not allocate an adapter for each call.
+ * Each thread keeps its own channel; it is only valid during the call it was given to.
+ */
+final class Channel implements StreamMarshalled.Sink, StreamMarshalled.Source {
+
+    private Map<Object, Object> container;
+
+    /**
+     * Points the channel at {@param container}.
+     *
+     * @return The previous container, to be restored by {@link #close(Map)} (streamed objects may be nested)
+     */
+    @SuppressWarnings("unchecked")
+    Map<Object, Object> open(Map<?, ?> container) {
+        final Map<Object, Object> previous = this.container;
+        this.container = (Map<Object, Object>) container;
+        return previous;
+    }
+
+    void close(Map<Object, Object> previous) {
+        this.container = previous;
+    }
+
+    @Override
+    public void write(String key, Object value) {
+        this.container.put(key, value);
+    }
+
+    @Override
+    public Object read(String key) {
+        return container.get(key);
+    }
+
+}
@@ -0,0 +1,54 @@
+package mx.kenzie.grammar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A precomputed lookup table for the constants of an enum type.
+ * Tables are built once per enum class and share its lifetime.
+ */
+final class EnumTable {
+
+    private static final ClassValue<EnumTable> tables = new ClassValue<>() {
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        protected EnumTable computeValue(Class<?> type) {
+            return new EnumTable((Class) type);
+        }
+    };
+
+    private final Class<?> type;
+    private final Enum<?>[] constants;
+    private final Map<String, Enum<?>> names;
+
+    private EnumTable(Class<? extends Enum<?>> type) {
+        this.type = type;
+        this.constants = type.getEnumConstants();
+        this.names = new HashMap<>(constants.length * 2);
+        for (Enum<?> constant : constants) names.put(constant.name(), constant);
+    }
+
+    static EnumTable of(Class<?> type) {
+        return tables.get(type);
+    }
+
+    /**
+     * Finds a constant from its ordinal, its name or the constant itself.
+     */
+    Enum<?> get(Object value) {
+        if (type.isInstance(value)) return (Enum<?>) value;
+        if (value instanceof Number number) return this.get(number.intValue());
+        final Enum<?> constant = names.get(value.toString());
+        if (constant == null) // dirty data may miss often, so no stack trace is taken
+            throw new GrammarException("No enum constant " + type.getSimpleName() + '.' + value, null, true, false);
+        return constant;
+    }
+
+    Enum<?> get(int ordinal) {
+        if (ordinal < 0 || ordinal >= constants.length)
+            throw new GrammarException("No enum constant " + type.getSimpleName() + " with ordinal " + ordinal, null,
+                true, false);
+        return constants[ordinal];
+    }
+
+}
@@ -0,0 +1,76 @@
+package mx.kenzie.grammar;
+
+/**
+ * The size of the data that an object would marshal to, counted without building it.
+ * This can be used to presize maps, lists and output buffers before marshalling or writing an object.
+ *
+ * @see Grammar#estimate(Object)
+ */
+public class Estimate {
+
+    private int objects, fields, elements;
+    private long stringBytes;
+
+    /**
+     * @return The number of maps (objects, including the root) in the marshalled data
+     */
+    public int objects() {
+        return objects;
+    }
+
+    /**
+     * @return The total number of key-value pairs across every map
+     */
+    public int fields() {
+        return fields;
+    }
+
+    /**
+     * @return The total number of entries across every list
+     */
+    public int elements() {
+        return elements;
+    }
+
+    /**
+     * @return The total UTF-8 length of every key and string value
+     */
+    public long stringBytes() {
+        return stringBytes;
+    }
+
+    void object(int fields) {
+        this.objects++;
+        this.fields += fields;
+    }
+
+    void field() {
+        this.fields++;
+    }
+
+    void list(int elements) {
+        this.elements += elements;
+    }
+
+    void string(CharSequence string) {
+        final int length = string.length();
+        long bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) continue;
+            if (c < 0x800) bytes += 1;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1))) {
+                bytes += 2;
+                i++;
+            } else bytes += 2;
+        }
+        this.stringBytes += bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Estimate[objects=" + objects + ", fields=" + fields + ", elements=" + elements + ", stringBytes="
+            + stringBytes + ']';
+    }
+
+}
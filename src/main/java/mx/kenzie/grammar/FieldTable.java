@@ -0,0 +1,72 @@
+package mx.kenzie.grammar;
+
+import java.lang.reflect.Field;
+
+/**
+ * The writable fields of a class, with a hash table from their marshalled keys to their positions.
+ * The table looks for a multiplier that gives every key its own slot, so most lookups need a single probe;
+ * if none is found it falls back to linear probing.
+ */
+final class FieldTable {
+
+    private static final int ATTEMPTS = 64;
+
+    final Field[] fields;
+    final String[] keys;
+    final boolean[] required;
+    final Field data;
+    private final int[] slots;
+    private final int mask, multiplier;
+
+    FieldTable(Field[] fields, String[] keys, boolean[] required, Field data) {
+        this.fields = fields;
+        this.keys = keys;
+        this.required = required;
+        this.data = data;
+        this.slots = new int[Integer.highestOneBit(Math.max(keys.length, 1) * 4 - 1) << 1];
+        this.mask = slots.length - 1;
+        int multiplier = 0x9E3779B9;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++, multiplier += 0x6A09E668) {
+            if (this.perfect(multiplier | 1)) break;
+        }
+        this.multiplier = multiplier | 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = this.slot(keys[i].hashCode());
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            this.slots[slot] = i + 1;
+        }
+    }
+
+    private boolean perfect(int multiplier) {
+        final boolean[] used = new boolean[slots.length];
+        for (String key : keys) {
+            final int slot = ((key.hashCode() * multiplier) >>> 16) & mask;
+            if (used[slot]) return false;
+            used[slot] = true;
+        }
+        return true;
+    }
+
+    private int slot(int hash) {
+        return ((hash * multiplier) >>> 16) & mask;
+    }
+
+    /**
+     * The position of the field marshalled as {@param key}, or -1 if there is none.
+     */
+    int indexOf(Object key) {
+        if (!(key instanceof String)) return -1;
+        int slot = this.slot(key.hashCode());
+        while (true) {
+            final int index = slots[slot] - 1;
+            if (index < 0) return -1;
+            if (keys[index].equals(key)) return index;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    int size() {
+        return fields.length;
+    }
+
+}
@@ -0,0 +1,23 @@
+package mx.kenzie.grammar;
+
+/**
+ * A 128-bit structural hash of an object's marshalled form.
+ * Objects that would marshal to equal maps have equal fingerprints, so a matching fingerprint
+ * is a (very) strong hint that an object has not changed since it was last serialised.
+ * Either half can be used alone as a 64-bit hash.
+ *
+ * @param high The upper 64 bits
+ * @param low  The lower 64 bits
+ */
+public record Fingerprint(long high, long low) {
+
+    public long asLong() {
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+}
@@ -1,17 +1,144 @@
 package mx.kenzie.grammar;
 
 import org.jetbrains.annotations.Contract;
-import org.jetbrains.annotations.NotNull;
 import sun.reflect.ReflectionFactory;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @SuppressWarnings({"TypeParameterHidesVisibleType", "rawtypes", "unchecked"})
 public class Grammar {
 
     private static final Map<Class<?>, Constructor<?>> constructors = new WeakHashMap<>();
+    private static final ClassValue<RecordComponent[]> components = new ClassValue<>() {
+        @Override
+        protected RecordComponent[] computeValue(Class<?> type) {
+            return type.getRecordComponents();
+        }
+    };
+    private static final ClassValue<Constructor<?>> canonicals = new ClassValue<>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            final RecordComponent[] parts = components.get(type);
+            final Class<?>[] types = new Class<?>[parts.length];
+            for (int i = 0; i < parts.length; i++) types[i] = parts[i].getType();
+            try {
+                final Constructor<?> constructor = type.getDeclaredConstructor(types);
+                try {
+                    constructor.trySetAccessible();
+                } catch (SecurityException ignored) {}
+                return constructor;
+            } catch (NoSuchMethodException e) {
+                throw new GrammarException("Record's canonical constructor was missing.", e, true, false);
+            }
+        }
+    };
+
+    /**
+     * Whether enum constants are marshalled by their ordinal rather than their name.
+     * Both forms are accepted when unmarshalling.
+     */
+    protected boolean enumOrdinals;
+
+    /**
+     * The resource limits applied when unmarshalling, or null if the data is trusted.
+     */
+    protected Limits limits;
+    private final ThreadLocal<Budget> budgets = ThreadLocal.withInitial(Budget::new);
+
+    /**
+     * Whether nested data is processed from an explicit work stack rather than by recursion.
+     * This allows very deep object graphs to be used on small thread stacks.
+     */
+    protected boolean iterative;
+    private final ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(Traversal::new);
+
+    /**
+     * Whether unmarshalling into an existing object reuses what it already holds:
+     * arrays of the right length are overwritten in place, and the existing elements of arrays and lists
+     * are unmarshalled into by position rather than replaced.
+     */
+    protected boolean recycle;
+
+    /**
+     * Where new objects are taken from when unmarshalling, or null to always create them.
+     */
+    protected Pool pool;
+
+    /**
+     * Whether fields holding their default value are left out of marshalled data, as for {@link OmitDefaults} classes.
+     * A field is only left out if a new instance holds the same default there (e.g. an empty list rather than null),
+     * so creating the object restores it.
+     */
+    protected boolean omitDefaults;
+
+    /**
+     * Whether unmarshalling into an existing object resets the omitted fields missing from the data
+     * to what a new instance holds, so the data replaces the object rather than updating some of its fields.
+     * This creates a new instance of the class for each object that has a field to reset.
+     */
+    protected boolean replaceOmitted;
+
+    /**
+     * The smallest list of records with only primitive components that is unmarshalled into an off-heap
+     * {@link RecordSlab} rather than a list of record objects, or zero to keep every list on the heap.
+     * This applies wherever the declared type (e.g. a {@link List}) can hold a slab.
+     */
+    protected int slabThreshold;
+
+    /**
+     * Whether a {@code __data} field keeps only the keys that no other field took, rather than a copy of all the data.
+     * The unknown keys are collected while the fields are written, and the map is only created if there are any.
+     */
+    protected boolean unknownData;
+    private final ThreadLocal<Report> reports = new ThreadLocal<>();
+    private final ThreadLocal<Channel> channels = ThreadLocal.withInitial(Channel::new);
+    private final ThreadLocal<Projection.Node> selections = new ThreadLocal<>();
+    private static final Object KEEP = new Object();
+    private static final Class<?> FROZEN_MAP = Collections.unmodifiableMap(new HashMap<>()).getClass(),
+        FROZEN_LIST = Collections.unmodifiableList(new ArrayList<>()).getClass();
+    private IdentityCache memo;
+    private Interner interner;
+    private final Map<String, Class<?>> aliases = new ConcurrentHashMap<>();
+    private final Map<Class<?>, String> tags = new ConcurrentHashMap<>();
+
+    /**
+     * The key under which the type of an {@link Any} value is stored, or null to leave types out.
+     * When unmarshalling, a stored type is used directly instead of guessing from the data's shape.
+     */
+    protected String discriminator;
+    private final ClassValue<FieldTable> tables = new ClassValue<>() {
+        @Override
+        protected FieldTable computeValue(Class<?> type) {
+            return Grammar.this.createTable(type);
+        }
+    };
+    private final ClassValue<Accessor[]> accessors = new ClassValue<>() {
+        @Override
+        protected Accessor[] computeValue(Class<?> type) {
+            return Grammar.this.createAccessors(type);
+        }
+    };
+    private final ClassValue<RecordPlan> records = new ClassValue<>() {
+        @Override
+        protected RecordPlan computeValue(Class<?> type) {
+            return Grammar.this.createRecordPlan(type);
+        }
+    };
+    private final ClassValue<Object[]> omissions = new ClassValue<>() {
+        @Override
+        protected Object[] computeValue(Class<?> type) {
+            return Grammar.this.createOmissions(type);
+        }
+    };
+    private final ClassValue<Map<Class<?>, Mapping>> mappings = new ClassValue<>() {
+        @Override
+        protected Map<Class<?>, Mapping> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
 
     /**
      * Extracts the relevant data from an object's fields into a map of key-value pairs.
@@ -20,7 +147,31 @@ public class Grammar {
      * @return A map containing the data
      */
     protected Map<String, Object> marshal(Object object) {
-        return this.marshal(object, object.getClass(), new LinkedHashMap<>());
+        final Map<String, Object> known = this.memoised(object, object.getClass());
+        if (known != null) return known;
+        final Map<String, Object> map = this.marshal(object, object.getClass(), new LinkedHashMap<>());
+        final Map<String, Object> stored = this.memoised(object, object.getClass());
+        return stored != null ? stored : map;
+    }
+
+    /**
+     * Keeps the marshalled form of up to {@param capacity} records (and {@link Immutable} objects)
+     * so that marshalling the same instance again is a lookup.
+     * Memoised data is returned as an unmodifiable map. A capacity of zero turns memoisation off.
+     */
+    protected void memoise(int capacity) {
+        this.memo = capacity > 0 ? new IdentityCache(capacity) : null;
+    }
+
+    /**
+     * Shares one instance between equal records, UUIDs and values of the given {@param types}
+     * created by unmarshalling, using a table of up to {@param capacity} canonical values.
+     * Registered types should be immutable, with value-based equality. A capacity of zero turns this off.
+     */
+    protected void canonicalise(int capacity, Class<?>... types) {
+        final Set<Class<?>> set = new HashSet<>(List.of(types));
+        set.add(UUID.class);
+        this.interner = capacity > 0 ? new Interner(capacity, set) : null;
     }
 
     /**
@@ -37,7 +188,12 @@ public class Grammar {
     protected <Type, Container extends Map<?, ?>> Type unmarshal(Class<Type> type, Container container) {
         if (type.isInterface()) throw new GrammarException("Cannot create an interface " + type);
         if (Modifier.isAbstract(type.getModifiers())) throw new GrammarException("Cannot create an abstract " + type);
-        if (type.isRecord()) return this.createRecord(type, container);
+        if (iterative && this.traversal() == null) return this.begin(() -> this.unmarshal(type, container));
+        final Traversal traversal = this.traversal();
+        if (type.isRecord()) {
+            if (traversal != null) return (Type) this.prebuildRecord(traversal, type, container);
+            return this.createRecord(type, container);
+        }
         final Type object = this.createObject(type);
         this.unmarshal(object, type, container);
         return object;
@@ -59,6 +215,199 @@ public class Grammar {
         return object;
     }
 
+    /**
+     * Creates an object, and inserts data from a map of key-value pairs into its fields, leniently.
+     * Values that cannot be converted are recorded in the {@param report} and the affected fields keep their defaults.
+     *
+     * @param type        The type to use for object construction
+     * @param container   The container from which to read the data
+     * @param report      The report in which to record problems
+     * @param <Type>      The object's type
+     * @param <Container> The container type
+     * @return The new object
+     */
+    protected <Type, Container extends Map<?, ?>> Type unmarshal(Class<Type> type, Container container, Report report) {
+        final Report previous = reports.get();
+        this.reports.set(report);
+        try {
+            return this.unmarshal(type, container);
+        } finally {
+            if (previous == null) this.reports.remove();
+            else this.reports.set(previous);
+        }
+    }
+
+    /**
+     * Inserts data from a map of key-value pairs into an object's fields, leniently.
+     * Values that cannot be converted are recorded in the {@param report} and the affected fields are left alone.
+     *
+     * @param object      The object whose data is to be overwritten
+     * @param container   The container from which to read the data
+     * @param report      The report in which to record problems
+     * @param <Type>      The object's type
+     * @param <Container> The container type
+     * @return The object, having been written to
+     */
+    @Contract("_, _, _ -> param1")
+    protected <Type, Container extends Map<?, ?>> Type unmarshal(Type object, Container container, Report report) {
+        final Report previous = reports.get();
+        this.reports.set(report);
+        try {
+            return this.unmarshal(object, object.getClass(), container);
+        } finally {
+            if (previous == null) this.reports.remove();
+            else this.reports.set(previous);
+        }
+    }
+
+    /**
+     * Extracts the data selected by a {@param projection} from an object's fields into a map of key-value pairs.
+     * Fields outside the projection are not read.
+     *
+     * @param object     The object whose data should be unwrapped
+     * @param projection The paths to include
+     * @return A map containing the data
+     */
+    protected Map<String, Object> marshal(Object object, Projection projection) {
+        return this.project(projection, () -> this.marshal(object));
+    }
+
+    /**
+     * Creates an object, and inserts the data selected by a {@param projection} into its fields.
+     * Data outside the projection is not converted.
+     *
+     * @param type        The type to use for object construction
+     * @param container   The container from which to read the data
+     * @param projection  The paths to include
+     * @param <Type>      The object's type
+     * @param <Container> The container type
+     * @return The new object
+     */
+    protected <Type, Container extends Map<?, ?>> Type unmarshal(Class<Type> type, Container container,
+                                                                 Projection projection) {
+        return this.project(projection, () -> this.unmarshal(type, container));
+    }
+
+    /**
+     * Inserts the data selected by a {@param projection} into an object's fields.
+     * Data outside the projection is not converted.
+     *
+     * @param object      The object whose data is to be overwritten
+     * @param container   The container from which to read the data
+     * @param projection  The paths to include
+     * @param <Type>      The object's type
+     * @param <Container> The container type
+     * @return The object, having been written to
+     */
+    @Contract("_, _, _ -> param1")
+    protected <Type, Container extends Map<?, ?>> Type unmarshal(Type object, Container container,
+                                                                 Projection projection) {
+        return this.project(projection, () -> this.unmarshal(object, object.getClass(), container));
+    }
+
+    /**
+     * Creates a deep copy of an object, following the same rules as marshalling and unmarshalling it,
+     * without building the intermediate map.
+     *
+     * @param object The object to copy
+     * @param <Type> The object's type
+     * @return The copy
+     */
+    @Contract("null -> null; !null -> new")
+    protected <Type> Type copy(Type object) {
+        if (object == null) return null;
+        return (Type) this.convert(object, object.getClass());
+    }
+
+    /**
+     * Creates an object of another type from the data in {@param object}, matching fields by their keys,
+     * as if it were marshalled and then unmarshalled as {@param type}, without building the intermediate map.
+     *
+     * @param object   The object whose data is to be copied
+     * @param type     The type to create
+     * @param <Result> The type to create
+     * @return The new object
+     */
+    @Contract("null, _ -> null")
+    protected <Result> Result convert(Object object, Class<Result> type) {
+        //<editor-fold desc="Object to Object" defaultstate="collapsed">
+        if (object == null) return null;
+        if (type.isInterface()) throw new GrammarException("Cannot create an interface " + type);
+        if (Modifier.isAbstract(type.getModifiers())) throw new GrammarException("Cannot create an abstract " + type);
+        if (object instanceof Map<?, ?> map) return this.unmarshal(type, (Map<String, Object>) map);
+        if (object instanceof Marshalled || Marshalled.class.isAssignableFrom(type))
+            return this.unmarshal(type, this.marshal(object));
+        final Mapping mapping = this.getMapping(object.getClass(), type);
+        try {
+            if (type.isRecord()) {
+                final Object[] parameters = new Object[mapping.readers.length];
+                for (int i = 0; i < parameters.length; i++) {
+                    final TypePlan plan = mapping.plans[i];
+                    final Object value = mapping.readers[i] == null ? null : this.read(mapping.readers[i], object);
+                    final Object result = this.transfer(value, plan, mapping.any[i]);
+                    parameters[i] = result == null ? this.getDefault(plan.type()) : result;
+                }
+                return this.canonical((Result) mapping.constructor.newInstance(parameters));
+            }
+            final Result result = this.createObject(type);
+            for (int i = 0; i < mapping.readers.length; i++) {
+                if (mapping.readers[i] == null) continue;
+                final Object value = this.read(mapping.readers[i], object);
+                if (value == null && mapping.optional[i]) continue;
+                final Object converted = this.transfer(value, mapping.plans[i], mapping.any[i]);
+                if (converted == null && mapping.plans[i].type().isPrimitive()) continue;
+                mapping.fields[i].set(result, converted);
+            }
+            return result;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new GrammarException("Unable to convert " + object.getClass().getSimpleName() + " to "
+                + type.getSimpleName() + ':', ex, true, false);
+        }
+        //</editor-fold>
+    }
+
+    /**
+     * Computes a structural hash of the data that {@param object} would marshal to, without building any maps.
+     * Objects hash as the map of their fields, so an object and its marshalled map have the same fingerprint.
+     *
+     * @param object The object to hash
+     * @return The object's fingerprint
+     */
+    protected Fingerprint fingerprint(Object object) {
+        final Hasher hasher = new Hasher();
+        if (object == null) hasher.put(Hasher.NULL);
+        else this.hash(object, object.getClass(), false, hasher);
+        return hasher.finish();
+    }
+
+    /**
+     * Counts the objects, fields, list elements and string bytes that {@param object} would marshal to,
+     * without building any maps.
+     *
+     * @param object The object to measure
+     * @return The size of its marshalled form
+     */
+    protected Estimate estimate(Object object) {
+        final Estimate estimate = new Estimate();
+        if (object != null) this.measure(object, object.getClass(), false, estimate);
+        return estimate;
+    }
+
+    /**
+     * Checks whether two objects would marshal to equal data, without building any maps (where possible).
+     * This stops at the first difference.
+     *
+     * @param first  The first object
+     * @param second The second object
+     * @return Whether the marshalled forms are equal
+     */
+    protected boolean equivalent(Object first, Object second) {
+        if (first == second) return true;
+        if (first == null || second == null) return false;
+        if (first.getClass() != second.getClass()) return this.same(first, second, Object.class, true);
+        return this.same(first, second, first.getClass(), false);
+    }
+
     /**
      * Extracts the relevant data from an object's fields into a map of key-value pairs.
      * The {@param container} is returned.
@@ -73,205 +422,923 @@ public class Grammar {
     @Contract("null, null, null -> fail; _, _, _ -> param3")
     protected <Type, Container extends Map<String, Object>>
     Container marshal(Object object, Class<Type> type, Container container) {
-        //<editor-fold desc="Getter classes" defaultstate="collapsed">
-        interface Getter extends AnnotatedElement {
-
-            Object get() throws IllegalAccessException, InvocationTargetException;
+        //<editor-fold desc="Object to Map" defaultstate="collapsed">
+        assert object != null : "Object was null.";
+        if (iterative && this.traversal() == null) return this.begin(() -> this.marshal(object, type, container));
+        if (object instanceof StreamMarshalled streamed) {
+            final Channel channel = channels.get();
+            final Map<Object, Object> previous = channel.open(container);
+            try {
+                streamed.serialise((StreamMarshalled.Sink) channel);
+            } finally {
+                channel.close(previous);
+            }
+            return container;
+        } else if (object instanceof Marshalled marshalled) {
+            container.putAll(marshalled.serialise());
+            return container;
+        }
+        final Traversal traversal = this.traversal();
+        final boolean memoise = memo != null && this.memoisable(object, type);
+        if (memoise) {
+            final Map<String, Object> known = memo.get(object);
+            if (known != null) {
+                container.putAll(known);
+                return container;
+            }
+        }
+        // only an empty container (e.g. one without a type tag) is stored
+        final boolean store = memoise && container.isEmpty();
+        // the work stack runs this after the tasks that fill in the nested data
+        if (store && traversal != null) this.defer(traversal, () -> memo.put(object, this.freeze(container)));
+        final Projection.Node selection = selections.get();
+        final Accessor[] fields = accessors.get(type);
+        final Object[] omissions = this.omissions(type);
+        for (int i = 0; i < fields.length; i++) {
+            final Accessor field = fields[i];
+            final String key = field.key;
+            final Projection.Node node = selection != null ? selection.select(key) : null;
+            if (selection != null && node == null) continue;
+            try {
+                final Object value = field.get(object);
+                if (value == null && field.optional) continue;
+                if (this.omitted(omissions, i, value, field.type)) continue;
+                if (node != null) this.selections.set(node);
+                container.put(key, this.deconstruct(value, field.type, field.any));
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new GrammarException("Unable to read data '" + type.getSimpleName() + '.' + field + "' from " +
+                    "object:", ex);
+            } finally {
+                this.restore(selection);
+            }
+        }
+        if (store && traversal == null) memo.put(object, this.freeze(container));
+        return container;
+        //</editor-fold>
+    }
 
-            int modifiers();
+    /**
+     * Inserts data from a map of key-value pairs into an object's fields.
+     * The {@param object} is returned.
+     *
+     * @param object      The object whose data is to be overwritten
+     * @param type        The type to use for data injection (a supertype of {@param object})
+     * @param container   The container from which to read the data
+     * @param <Type>      The object's type
+     * @param <Container> The container type
+     * @return The object, having been written to
+     */
+    @Contract("null, null, null -> fail; _, _, _ -> param1")
+    @SuppressWarnings("unchecked")
+    protected <Type, Container extends Map<?, ?>> Type unmarshal(Type object, Class<?> type, Container container) {
+        //<editor-fold desc="Map to Object" defaultstate="collapsed">
+        assert object != null : "Object was null.";
+        assert !(object instanceof Class<?>) : "Classes cannot be written to.";
+        if (iterative && this.traversal() == null) return this.begin(() -> this.unmarshal(object, type, container));
+        final Traversal traversal = this.traversal();
+        if (object instanceof StreamMarshalled streamed) {
+            final Channel channel = channels.get();
+            final Map<Object, Object> previous = channel.open(container);
+            try {
+                streamed.deserialise((StreamMarshalled.Source) channel);
+            } finally {
+                channel.close(previous);
+            }
+            return object;
+        } else if (object instanceof Marshalled marshalled) {
+            marshalled.deserialise((Map<String, Object>) container);
+            return object;
+        }
+        if (type.isRecord()) throw new GrammarException("Data cannot be written to an existing Record object.");
+        final Budget budget = this.enter(container.size());
+        final Report report = reports.get();
+        final Projection.Node selection = selections.get();
+        try {
+            final FieldTable table = tables.get(type);
+            final boolean capture = table.data != null && unknownData;
+            if (table.data != null && !capture) try {
+                assert Map.class.isAssignableFrom(table.data.getType()) : "Dataset field must accept map.";
+                final Map<String, Object> initial = (Map<String, Object>) table.data.get(object);
+                if (initial != null) initial.putAll((Map<? extends String, ?>) container);
+                else table.data.set(object, new LinkedHashMap<>(container));
+            } catch (IllegalAccessException ex) {
+                throw new GrammarException("Unable to store dataset object.", ex, true, false);
+            }
+            if (capture || container.size() * 2 < table.size()) {
+                // sparse data: look up each entry's field, so the work follows the size of the input
+                Map<Object, Object> unknown = null;
+                for (Map.Entry<?, ?> entry : container.entrySet()) {
+                    final int index = table.indexOf(entry.getKey());
+                    if (index < 0) {
+                        if (!capture) continue;
+                        unknown = this.getUnknown(object, table, unknown);
+                        unknown.put(entry.getKey(), entry.getValue());
+                        continue;
+                    }
+                    this.unmarshalField(object, table.fields[index], table.keys[index], entry.getValue(), traversal,
+                        report, selection);
+                }
+            } else for (int i = 0; i < table.size(); i++) {
+                final String key = table.keys[i];
+                final Object value = container.get(key);
+                if (value == null && !container.containsKey(key)) continue;
+                this.unmarshalField(object, table.fields[i], key, value, traversal, report, selection);
+            }
+            if (replaceOmitted) {
+                final Object[] omissions = this.omissions(type);
+                if (omissions != null) this.restoreOmitted(object, type, table, omissions, container, selection);
+            }
+            return object;
+        } finally {
+            this.exit(budget);
+        }
+        //</editor-fold>
+    }
 
-            Class<?> getType();
+    /**
+     * The map that keys without a field are kept in, for {@link #unknownData}.
+     * This is only created once there is an unknown key to put in it.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Object> getUnknown(Object object, FieldTable table, Map<Object, Object> unknown) {
+        if (unknown != null) return unknown;
+        try {
+            assert Map.class.isAssignableFrom(table.data.getType()) : "Dataset field must accept map.";
+            final Map<Object, Object> initial = (Map<Object, Object>) table.data.get(object);
+            if (initial != null) return initial;
+            final Map<Object, Object> created = new LinkedHashMap<>();
+            table.data.set(object, created);
+            return created;
+        } catch (IllegalAccessException ex) {
+            throw new GrammarException("Unable to store dataset object.", ex, true, false);
+        }
+    }
 
-            String getName();
+    /**
+     * Gives the fields left out of {@param container} the values a new instance holds, for {@link #replaceOmitted}.
+     */
+    private void restoreOmitted(Object object, Class<?> type, FieldTable table, Object[] omissions,
+                                Map<?, ?> container, Projection.Node selection) {
+        //<editor-fold desc="Resets the fields that were left out." defaultstate="collapsed">
+        final Accessor[] accessors = this.accessors.get(type);
+        Object prototype = null;
+        for (int i = 0; i < accessors.length; i++) {
+            final String key = accessors[i].key;
+            if (omissions[i] == KEEP || container.containsKey(key)) continue;
+            if (selection != null && selection.select(key) == null) continue;
+            final int index = table.indexOf(key);
+            if (index < 0) continue;
+            try {
+                if (prototype == null) prototype = this.getConstructor(type).newInstance();
+                table.fields[index].set(object, table.fields[index].get(prototype));
+            } catch (ReflectiveOperationException ex) {
+                throw new GrammarException("Unable to write to object:", ex, true, false);
+            }
+        }
+        //</editor-fold>
+    }
 
+    /**
+     * Converts {@param value} and inserts it into one field of an object.
+     */
+    private void unmarshalField(Object object, Field field, String key, Object value, Traversal traversal,
+                                Report report, Projection.Node selection) {
+        //<editor-fold desc="Writes one field." defaultstate="collapsed">
+        final Projection.Node node = selection != null ? selection.select(key) : null;
+        if (selection != null && node == null) return;
+        final Any any = field.getAnnotation(Any.class);
+        // a field declared as a type variable takes the type bound by the object's class
+        final Class<?> declared = TypePlan.of(field, object.getClass()).type();
+        final Class<?> expected;
+        if (this.matches(any)) expected = this.getBestMatch(declared, any, value);
+        else expected = declared;
+        if (report != null) report.enter(key);
+        if (node != null) this.selections.set(node);
+        try {
+            // reading a primitive field would box it, so only containers look at what is already there
+            final Object existing = value instanceof Map || value instanceof Collection ? field.get(object) : null;
+            if (existing != null && value instanceof Map map && !(existing instanceof Map)) {
+                if (traversal != null) this.defer(traversal, () -> this.unmarshal(existing, existing.getClass(), map));
+                else this.unmarshal(existing, existing.getClass(), map);
+            } else if (recycle && value instanceof Collection<?> list && existing != null && existing.getClass().isArray()
+                && Array.getLength(existing) == list.size() && expected.isInstance(existing))
+                this.refillArray(existing, any, list);
+            else this.prepareFieldValue(object, field, expected, this.construct(value, expected));
+        } catch (LimitException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            if (report == null || ex instanceof Error)
+                throw new GrammarException("Unable to write to object:", ex, true, false);
+            report.add(ex);
+        } finally {
+            if (report != null) report.exit();
+            this.restore(selection);
         }
-        record RecordGetter(RecordComponent component, Method accessor, Object object) implements Getter {
+        //</editor-fold>
+    }
 
-            @Override
-            public Object get() throws IllegalAccessException, InvocationTargetException {
-                return accessor.invoke(object);
+    /**
+     * Finds the fields of {@param type} that data can be written to, and their keys.
+     */
+    private FieldTable createTable(Class<?> type) {
+        final Set<Field> candidates = new LinkedHashSet<>();
+        candidates.addAll(List.of(type.getDeclaredFields()));
+        candidates.addAll(List.of(type.getFields()));
+        final List<Field> fields = new ArrayList<>(candidates.size());
+        final List<String> keys = new ArrayList<>(candidates.size());
+        Field data = null;
+        for (Field field : candidates) {
+            final String key = this.getName(field);
+            if (key.equals("__data")) {
+                field.trySetAccessible();
+                data = field;
+                continue;
             }
+            if (this.shouldSkip(field)) continue;
+            field.trySetAccessible();
+            fields.add(field);
+            keys.add(key);
+        }
+        final boolean[] required = new boolean[fields.size()];
+        for (int i = 0; i < required.length; i++) required[i] = !fields.get(i).isAnnotationPresent(Optional.class);
+        return new FieldTable(fields.toArray(new Field[0]), keys.toArray(new String[0]), required, data);
+    }
 
-            @Override
-            public boolean isAnnotationPresent(@NotNull Class<? extends Annotation> annotation) {
-                return component.isAnnotationPresent(annotation);
+    /**
+     * Finds the members of {@param type} that are marshalled, and their keys.
+     * Record components keep their order; other classes list inherited public fields (from the topmost superclass down)
+     * followed by their own fields, each in declaration order, so marshalled maps have a stable key order.
+     */
+    private Accessor[] createAccessors(Class<?> type) {
+        //<editor-fold desc="Plans the readable members of a class." defaultstate="collapsed">
+        final List<Accessor> list = new ArrayList<>();
+        if (type.isRecord()) for (RecordComponent component : components.get(type)) {
+            final Method accessor = component.getAccessor();
+            if (this.shouldSkip(accessor.getModifiers())) continue;
+            final String key = this.getName(component, component.getName());
+            if (key.equals("__data")) continue;
+            accessor.trySetAccessible();
+            list.add(new Accessor(accessor, key, component.getType(), component.isAnnotationPresent(Optional.class),
+                component.isAnnotationPresent(Any.class)));
+        }
+        else {
+            final List<Field> fields = new ArrayList<>();
+            final Deque<Class<?>> hierarchy = new ArrayDeque<>();
+            for (Class<?> parent = type.getSuperclass(); parent != null; parent = parent.getSuperclass())
+                hierarchy.push(parent);
+            for (Class<?> parent : hierarchy) {
+                for (Field field : parent.getDeclaredFields()) if (Modifier.isPublic(field.getModifiers())) fields.add(field);
             }
-
-            @Override
-            public <T extends Annotation> T getAnnotation(@NotNull Class<T> annotationClass) {
-                return component.getAnnotation(annotationClass);
+            fields.addAll(List.of(type.getDeclaredFields()));
+            for (Field field : fields) {
+                if (this.shouldSkip(field)) continue;
+                final String key = this.getName(field);
+                if (key.equals("__data")) continue;
+                field.trySetAccessible();
+                list.add(new Accessor(field, key, field.getType(), field.isAnnotationPresent(Optional.class),
+                    field.isAnnotationPresent(Any.class)));
             }
+        }
+        return list.toArray(new Accessor[0]);
+        //</editor-fold>
+    }
 
-            @Override
-            public Annotation[] getAnnotations() {
-                return component.getAnnotations();
-            }
+    /**
+     * The default each of the {@link #accessors} of {@param type} is left out at, or {@link #KEEP} for those that
+     * are always kept, or null if defaults are not omitted for this type.
+     */
+    private Object[] omissions(Class<?> type) {
+        if (!omitDefaults && !type.isAnnotationPresent(OmitDefaults.class)) return null;
+        return omissions.get(type);
+    }
 
-            @Override
-            public Annotation[] getDeclaredAnnotations() {
-                return component.getDeclaredAnnotations();
+    private Object[] createOmissions(Class<?> type) {
+        //<editor-fold desc="Finds the fields a new instance leaves at their default." defaultstate="collapsed">
+        final Accessor[] fields = accessors.get(type);
+        final Object[] omissions = new Object[fields.length];
+        Arrays.fill(omissions, KEEP);
+        final Object prototype;
+        try {
+            prototype = type.isRecord() ? null : this.getConstructor(type).newInstance();
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return omissions; // without a new instance to compare with, nothing can be safely left out
+        }
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                // a record restores what getEmpty gives, an object what its constructor leaves
+                final Object value = prototype == null ? this.getEmpty(fields[i].type) : fields[i].get(prototype);
+                if (this.isDefault(value, fields[i].type)) omissions[i] = value;
+            } catch (ReflectiveOperationException | RuntimeException ignored) {}
+        }
+        return omissions;
+        //</editor-fold>
+    }
+
+    /**
+     * Whether a value is left out, which is only when it is the same kind of default that would be restored:
+     * a null collection is kept if a new instance holds an empty one, and the other way around.
+     */
+    private boolean omitted(Object[] omissions, int index, Object value, Class<?> type) {
+        if (omissions == null) return false;
+        final Object expected = omissions[index];
+        if (expected == KEEP) return false;
+        if (expected == null || value == null) return expected == value;
+        return this.isDefault(value, type);
+    }
+
+    private boolean isDefault(Object value, Class<?> type) {
+        if (value == null) return true;
+        if (type.isPrimitive()) return value.equals(this.getDefault(type));
+        if (value instanceof Collection<?> collection) return collection.isEmpty();
+        if (value instanceof Map<?, ?> map) return map.isEmpty();
+        return value.getClass().isArray() && Array.getLength(value) == 0;
+    }
+
+    /**
+     * The value restored for a field or component that was left out of the data, for {@link #omitDefaults}.
+     */
+    private Object getEmpty(Class<?> type) {
+        if (type.isArray()) return Array.newInstance(type.getComponentType(), 0);
+        if (Collection.class.isAssignableFrom(type)) return this.createCollection(type);
+        if (Map.class.isAssignableFrom(type)) return this.createMap(type);
+        return this.getDefault(type);
+    }
+
+    /**
+     * Hashes a value as {@link #deconstruct(Object, Class, boolean)} would marshal it.
+     */
+    private void hash(Object value, Class<?> component, boolean any, Hasher hasher) {
+        //<editor-fold desc="Hashes one value." defaultstate="collapsed">
+        if (value == null) hasher.put(Hasher.NULL);
+        else if (value instanceof String string) hasher.put(string);
+        else if (value instanceof Integer number) hasher.put(Hasher.INTEGER, number);
+        else if (value instanceof Long number) hasher.put(Hasher.LONG, number);
+        else if (value instanceof Double number) hasher.put(Hasher.DOUBLE, Double.doubleToLongBits(number));
+        else if (value instanceof Float number) hasher.put(Hasher.FLOAT, Float.floatToIntBits(number));
+        else if (value instanceof Boolean bool) hasher.put(Hasher.BOOLEAN, bool ? 1 : 0);
+        else if (value instanceof Number number) {
+            hasher.put(Hasher.NUMBER);
+            hasher.put(number.getClass().getName());
+            hasher.put(number.toString());
+        } else if (value instanceof Enum<?> constant) this.hash(this.deconstructEnum(constant), null, false, hasher);
+        else if (value instanceof Collection<?> list) {
+            hasher.put(Hasher.LIST, list.size());
+            for (Object object : list) this.hash(object, object == null ? null : object.getClass(), any, hasher);
+        } else if (value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            hasher.put(Hasher.LIST, length);
+            if (value instanceof int[] numbers) for (int number : numbers) hasher.put(Hasher.INTEGER, number);
+            else if (value instanceof long[] numbers) for (long number : numbers) hasher.put(Hasher.LONG, number);
+            else if (value instanceof Object[] objects) {
+                final Class<?> type = (component != null && component.isArray() ? component : objects.getClass())
+                    .getComponentType();
+                for (Object object : objects) this.hash(object, any && object != null ? object.getClass() : type, any, hasher);
+            } else for (int i = 0; i < length; i++) this.hash(Array.get(value, i), null, false, hasher);
+        } else if (value instanceof Map<?, ?> map) {
+            final Hasher entry = new Hasher();
+            for (Map.Entry<?, ?> pair : map.entrySet()) {
+                final Object object = pair.getValue();
+                entry.reset();
+                entry.put(String.valueOf(pair.getKey()));
+                this.hash(object, object == null ? null : object.getClass(), any, entry);
+                hasher.combine(entry);
+            }
+            hasher.close();
+        } else if (value instanceof Marshalled) this.hash(this.marshal(value), null, false, hasher);
+        else {
+            final Class<?> type = any ? value.getClass() : component;
+            final Hasher entry = new Hasher();
+            if (any && discriminator != null) {
+                entry.put(discriminator);
+                entry.put(this.getTag(type));
+                hasher.combine(entry);
+            }
+            try {
+                final Accessor[] fields = accessors.get(type);
+                final Object[] omissions = this.omissions(type);
+                for (int i = 0; i < fields.length; i++) {
+                    final Accessor field = fields[i];
+                    final Object object = field.get(value);
+                    if (object == null && field.optional) continue;
+                    if (this.omitted(omissions, i, object, field.type)) continue;
+                    entry.reset();
+                    entry.put(field.key);
+                    this.hash(object, field.type, field.any, entry);
+                    hasher.combine(entry);
+                }
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new GrammarException("Unable to read data from " + type.getSimpleName() + ':', ex);
             }
+            hasher.close();
+        }
+        //</editor-fold>
+    }
 
-            @Override
-            public int modifiers() {
-                return accessor.getModifiers();
+    /**
+     * Measures a value as {@link #deconstruct(Object, Class, boolean)} would marshal it.
+     */
+    private void measure(Object value, Class<?> component, boolean any, Estimate estimate) {
+        //<editor-fold desc="Measures one value." defaultstate="collapsed">
+        if (value == null || value instanceof Number || value instanceof Boolean) return;
+        if (value instanceof String string) estimate.string(string);
+        else if (value instanceof Enum<?> constant) this.measure(this.deconstructEnum(constant), null, false, estimate);
+        else if (value instanceof Collection<?> list) {
+            estimate.list(list.size());
+            for (Object object : list) this.measure(object, object == null ? null : object.getClass(), any, estimate);
+        } else if (value.getClass().isArray()) {
+            estimate.list(Array.getLength(value));
+            if (!(value instanceof Object[] objects)) return;
+            final Class<?> type = (component != null && component.isArray() ? component : objects.getClass())
+                .getComponentType();
+            for (Object object : objects) this.measure(object, any && object != null ? object.getClass() : type, any, estimate);
+        } else if (value instanceof Map<?, ?> map) {
+            estimate.object(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                final Object object = entry.getValue();
+                estimate.string(String.valueOf(entry.getKey()));
+                this.measure(object, object == null ? null : object.getClass(), any, estimate);
+            }
+        } else if (value instanceof Marshalled) this.measure(this.marshal(value), null, false, estimate);
+        else {
+            final Class<?> type = any ? value.getClass() : component;
+            estimate.object(0);
+            if (any && discriminator != null) {
+                estimate.field();
+                estimate.string(discriminator);
+                estimate.string(this.getTag(type));
+            }
+            try {
+                final Accessor[] fields = accessors.get(type);
+                final Object[] omissions = this.omissions(type);
+                for (int i = 0; i < fields.length; i++) {
+                    final Accessor field = fields[i];
+                    final Object object = field.get(value);
+                    if (object == null && field.optional) continue;
+                    if (this.omitted(omissions, i, object, field.type)) continue;
+                    estimate.field();
+                    estimate.string(field.key);
+                    this.measure(object, field.type, field.any, estimate);
+                }
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new GrammarException("Unable to read data from " + type.getSimpleName() + ':', ex);
             }
+        }
+        //</editor-fold>
+    }
 
-            @Override
-            public Class<?> getType() {
-                return component.getType();
+    /**
+     * Compares two values as {@link #deconstruct(Object, Class, boolean)} would marshal them.
+     */
+    private boolean same(Object first, Object second, Class<?> component, boolean any) {
+        //<editor-fold desc="Compares two values." defaultstate="collapsed">
+        if (first == second) return true;
+        if (first == null || second == null) return false;
+        if (second instanceof Enum<?> && !(first instanceof Enum<?>)) return this.same(second, first, component, any);
+        if (first instanceof String || first instanceof Number || first instanceof Boolean) return first.equals(second);
+        else if (first instanceof Enum<?> constant) {
+            if (second instanceof Enum<?> other) return this.deconstructEnum(constant).equals(this.deconstructEnum(other));
+            return this.deconstructEnum(constant).equals(second);
+        } else if (first instanceof Collection<?> || first.getClass().isArray()) {
+            if (!(second instanceof Collection<?> || second.getClass().isArray())) return false;
+            if (first.getClass() == second.getClass() && first.getClass().isArray())
+                return this.sameElements(first, second,
+                    (component != null && component.isArray() ? component : first.getClass()).getComponentType(), any);
+            final List<?> left = this.listOf(first), right = this.listOf(second);
+            if (left.size() != right.size()) return false;
+            for (int i = 0; i < left.size(); i++) {
+                final Object object = left.get(i);
+                if (!this.same(object, right.get(i), object == null ? null : object.getClass(), any)) return false;
+            }
+            return true;
+        } else if (first instanceof Map<?, ?> || second instanceof Map<?, ?> || first instanceof Marshalled
+            || second instanceof Marshalled || first.getClass() != second.getClass()) {
+            final Object left = this.deconstruct(first, component, any), right = this.deconstruct(second, component, any);
+            if (!(left instanceof Map<?, ?> one && right instanceof Map<?, ?> two)) return false;
+            if (one.size() != two.size()) return false;
+            for (Map.Entry<?, ?> entry : one.entrySet()) {
+                final Object key = entry.getKey(), object = entry.getValue();
+                if (!two.containsKey(key)) return false;
+                if (!this.same(object, two.get(key), object == null ? null : object.getClass(), any)) return false;
             }
+            return true;
+        } else if (second instanceof Enum<?> || second instanceof Collection<?> || second.getClass().isArray())
+            return false;
+        final Class<?> type = any ? first.getClass() : component;
+        try {
+            final Accessor[] fields = accessors.get(type);
+            final Object[] omissions = this.omissions(type);
+            for (int i = 0; i < fields.length; i++) {
+                final Accessor field = fields[i];
+                final Object left = field.get(first), right = field.get(second);
+                if (this.omitted(omissions, i, left, field.type) && this.omitted(omissions, i, right, field.type))
+                    continue;
+                if (!this.same(left, right, field.type, field.any)) return false;
+            }
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new GrammarException("Unable to read data from " + type.getSimpleName() + ':', ex);
+        }
+        return true;
+        //</editor-fold>
+    }
+
+    private boolean sameElements(Object first, Object second, Class<?> component, boolean any) {
+        if (first instanceof int[] left) return Arrays.equals(left, (int[]) second);
+        if (first instanceof long[] left) return Arrays.equals(left, (long[]) second);
+        if (first instanceof double[] left) return Arrays.equals(left, (double[]) second);
+        if (first instanceof boolean[] left) return Arrays.equals(left, (boolean[]) second);
+        if (!(first instanceof Object[] left)) return this.same(this.listOf(first), this.listOf(second), null, false);
+        final Object[] right = (Object[]) second;
+        if (left.length != right.length) return false;
+        for (int i = 0; i < left.length; i++) {
+            final Object object = left[i];
+            if (!this.same(object, right[i], any && object != null ? object.getClass() : component, any)) return false;
+        }
+        return true;
+    }
 
-            @Override
-            public String getName() {
-                return component.getName();
+    private List<?> listOf(Object value) {
+        if (value instanceof List<?> list) return list;
+        if (value instanceof Collection<?> collection) return new ArrayList<>(collection);
+        final Object[] objects = new Object[Array.getLength(value)];
+        for (int i = 0; i < objects.length; i++) objects[i] = Array.get(value, i);
+        return Arrays.asList(objects);
+    }
+
+    /**
+     * Copies a single value into the type described by {@param plan}, as {@link #convert(Object, Class)} would.
+     */
+    private Object transfer(Object value, TypePlan plan, boolean any) throws IllegalAccessException {
+        //<editor-fold desc="Copies one value." defaultstate="collapsed">
+        if (value == null) return null;
+        final Class<?> type = plan.type();
+        if (type.isPrimitive()) return this.convertPrimitive(type, value, "value", null);
+        if (value instanceof String || value instanceof Number || value instanceof Boolean
+            || value instanceof Character || value instanceof UUID) {
+            if (type.isInstance(value)) return value;
+            return this.construct(value, type);
+        } else if (value instanceof Enum<?> constant) {
+            if (type.isInstance(value)) return value;
+            return this.construct(this.deconstructEnum(constant), type);
+        } else if (value instanceof Collection<?> || value.getClass().isArray()) {
+            if (!type.isArray() && !Collection.class.isAssignableFrom(type) && !type.isAssignableFrom(ArrayList.class)) {
+                this.reject("A list could not be mapped to type " + type.getSimpleName());
+                return null;
             }
+            final Collection<?> list;
+            if (value instanceof Collection<?> collection) list = collection;
+            else {
+                final Object[] objects = new Object[Array.getLength(value)];
+                for (int i = 0; i < objects.length; i++) objects[i] = Array.get(value, i);
+                list = Arrays.asList(objects);
+            }
+            final Budget budget = this.enter(list.size());
+            try {
+                if (type.isArray()) {
+                    final Class<?> component = type.getComponentType();
+                    final TypePlan element = plan.element() != null ? plan.element() : new TypePlan(component, null, null);
+                    final Object array = Array.newInstance(component, list.size());
+                    int index = 0;
+                    for (Object thing : list) Array.set(array, index++, this.transfer(thing, element, any));
+                    return array;
+                }
+                final TypePlan element = plan.element() != null ? plan.element() : TypePlan.OBJECT;
+                final Collection replacement = Collection.class.isAssignableFrom(type)
+                    ? this.createCollection(type) : new ArrayList<>(list.size());
+                for (Object thing : list) replacement.add(this.transfer(thing, element, any));
+                return replacement;
+            } finally {
+                this.exit(budget);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            // a map going into an object is unmarshalled, as it would be from marshalled data
+            if (!Map.class.isAssignableFrom(type) && !type.isAssignableFrom(LinkedHashMap.class))
+                return this.construct(map, plan);
+            final Budget budget = this.enter(map.size());
+            try {
+                final TypePlan key = plan.key() != null ? plan.key() : TypePlan.OBJECT;
+                final TypePlan element = plan.element() != null ? plan.element() : TypePlan.OBJECT;
+                final Map replacement = Map.class.isAssignableFrom(type)
+                    ? this.createMap(type) : new LinkedHashMap<>(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet())
+                    replacement.put(this.constructKey(entry.getKey(), key.type()), this.transfer(entry.getValue(), element, any));
+                return replacement;
+            } finally {
+                this.exit(budget);
+            }
+        }
+        final Class<?> target = (any || type == Object.class) && type.isInstance(value) ? value.getClass() : type;
+        final Budget budget = this.enter(0);
+        try {
+            return this.convert(value, target);
+        } finally {
+            this.exit(budget);
+        }
+        //</editor-fold>
+    }
 
+    private Object read(AccessibleObject reader, Object object) throws IllegalAccessException {
+        if (reader instanceof Field field) return field.get(object);
+        try {
+            return ((Method) reader).invoke(object);
+        } catch (InvocationTargetException ex) {
+            throw new GrammarException("Unable to read data from " + object.getClass().getSimpleName() + ':', ex,
+                true, false);
         }
-        record FieldGetter(Field field, Object object) implements Getter {
+    }
 
-            @Override
-            public Object get() throws IllegalAccessException, InvocationTargetException {
-                return field.get(object);
+    /**
+     * Finds (or plans) how data is copied from objects of {@param source} into objects of {@param target}.
+     */
+    private Mapping getMapping(Class<?> source, Class<?> target) {
+        final Map<Class<?>, Mapping> known = mappings.get(source);
+        final Mapping mapping = known.get(target);
+        if (mapping != null) return mapping;
+        final Mapping created = this.createMapping(source, target);
+        known.put(target, created);
+        return created;
+    }
+
+    private Mapping createMapping(Class<?> source, Class<?> target) {
+        //<editor-fold desc="Plans an object to object copy." defaultstate="collapsed">
+        final Map<String, AccessibleObject> readers = new HashMap<>();
+        if (source.isRecord()) for (RecordComponent component : source.getRecordComponents()) {
+            final Method accessor = component.getAccessor();
+            if (this.shouldSkip(accessor.getModifiers())) continue;
+            accessor.trySetAccessible();
+            readers.put(this.getName(component, component.getName()), accessor);
+        }
+        else {
+            final FieldTable table = tables.get(source);
+            for (int i = 0; i < table.size(); i++) readers.put(table.keys[i], table.fields[i]);
+        }
+        if (target.isRecord()) {
+            final RecordComponent[] components = target.getRecordComponents();
+            final AccessibleObject[] sources = new AccessibleObject[components.length];
+            final TypePlan[] plans = new TypePlan[components.length];
+            final boolean[] optional = new boolean[components.length], any = new boolean[components.length];
+            for (int i = 0; i < components.length; i++) {
+                final RecordComponent component = components[i];
+                sources[i] = readers.get(this.getName(component, component.getName()));
+                plans[i] = TypePlan.of(component);
+                any[i] = component.isAnnotationPresent(Any.class)
+                    || sources[i] != null && sources[i].isAnnotationPresent(Any.class);
             }
+            final Constructor<?> constructor = this.getCanonicalConstructor(target);
+            constructor.trySetAccessible();
+            return new Mapping(sources, null, plans, optional, any, constructor);
+        }
+        final FieldTable table = tables.get(target);
+        final AccessibleObject[] sources = new AccessibleObject[table.size()];
+        final TypePlan[] plans = new TypePlan[table.size()];
+        final boolean[] optional = new boolean[table.size()], any = new boolean[table.size()];
+        for (int i = 0; i < table.size(); i++) {
+            final Field field = table.fields[i];
+            sources[i] = readers.get(table.keys[i]);
+            plans[i] = TypePlan.of(field, target);
+            optional[i] = sources[i] != null && sources[i].isAnnotationPresent(Optional.class);
+            any[i] = field.isAnnotationPresent(Any.class)
+                || sources[i] != null && sources[i].isAnnotationPresent(Any.class);
+        }
+        return new Mapping(sources, table.fields, plans, optional, any, null);
+        //</editor-fold>
+    }
+
+    /**
+     * Enters one level of nesting for the {@link #limits}, if there are any.
+     */
+    private Budget enter(int elements) {
+        if (limits == null) return null;
+        final Budget budget = budgets.get();
+        budget.enter(limits, elements, this.traversal() == null);
+        return budget;
+    }
+
+    private void exit(Budget budget) {
+        if (budget != null) budget.exit();
+    }
+
+    private CharSequence checkLength(CharSequence sequence) {
+        if (limits != null && sequence.length() > limits.length())
+            throw new LimitException("String has " + sequence.length() + " characters, more than " + limits.length() + '.');
+        return sequence;
+    }
 
-            @Override
-            public boolean isAnnotationPresent(@NotNull Class<? extends Annotation> annotation) {
-                return field.isAnnotationPresent(annotation);
+    /**
+     * The active work stack for {@link #iterative} processing, or null if data is processed recursively.
+     */
+    private Traversal traversal() {
+        if (!iterative) return null;
+        final Traversal traversal = traversals.get();
+        return traversal.active() ? traversal : null;
+    }
+
+    private <Result> Result begin(Supplier<Result> start) {
+        if (limits != null) budgets.get().reset(limits);
+        return traversals.get().run(start);
+    }
+
+    /**
+     * Defers a task, carrying the current projection selection and nesting depth with it.
+     */
+    private void defer(Traversal traversal, Runnable task) {
+        final Projection.Node selection = selections.get();
+        final Budget budget = limits != null ? budgets.get() : null;
+        if (selection == null && budget == null) {
+            traversal.defer(task);
+            return;
+        }
+        final int depth = budget != null ? budget.depth() : 0;
+        traversal.defer(() -> {
+            if (selection != null) this.selections.set(selection);
+            final int previous = budget != null ? budget.depth() : 0;
+            if (budget != null) budget.depth(depth);
+            try {
+                task.run();
+            } finally {
+                if (selection != null) this.selections.remove();
+                if (budget != null) budget.depth(previous);
             }
+        });
+    }
+
+    private <Result> Result project(Projection projection, Supplier<Result> action) {
+        final Projection.Node previous = selections.get();
+        this.selections.set(projection.root());
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) this.selections.remove();
+            else this.selections.set(previous);
+        }
+    }
+
+    /**
+     * The canonical instance equal to {@param value}, if canonicalisation is on and applies to its type.
+     */
+    private <Value> Value canonical(Value value) {
+        if (interner == null || value == null || !interner.accepts(value.getClass())) return value;
+        return interner.intern(value);
+    }
 
-            @Override
-            public <T extends Annotation> T getAnnotation(@NotNull Class<T> annotationClass) {
-                return field.getAnnotation(annotationClass);
-            }
+    /**
+     * Registers a short {@param alias} to use as the {@link #discriminator} tag of {@param type}.
+     * Types without an alias are tagged with their class name.
+     */
+    protected void alias(String alias, Class<?> type) {
+        this.aliases.put(alias, type);
+        this.tags.put(type, alias);
+    }
 
-            @Override
-            public Annotation[] getAnnotations() {
-                return field.getAnnotations();
-            }
+    /**
+     * The tag stored under the {@link #discriminator} for a value of {@param type}.
+     */
+    protected String getTag(Class<?> type) {
+        final String tag = tags.get(type);
+        return tag != null ? tag : type.getName();
+    }
 
-            @Override
-            public Annotation[] getDeclaredAnnotations() {
-                return field.getDeclaredAnnotations();
-            }
+    /**
+     * Finds the type named by a {@link #discriminator} tag, if it is one that {@param any} permits.
+     * Class names are only accepted for the types listed in {@param any}; anything else needs an {@link #alias}.
+     */
+    private Class<?> getTagged(Object tag, Class<?> alternative, Any any) {
+        //<editor-fold desc="Resolves a type tag." defaultstate="collapsed">
+        if (!(tag instanceof String name)) return null;
+        Class<?> type = aliases.get(name);
+        if (type == null) for (Class<?> option : any.value()) {
+            if (!option.getName().equals(name)) continue;
+            this.aliases.putIfAbsent(name, option);
+            type = option;
+            break;
+        }
+        if (type == null) return null;
+        if (any.value().length == 0) return alternative.isAssignableFrom(type) ? type : null;
+        for (Class<?> option : any.value()) if (option == type) return type;
+        return null;
+        //</editor-fold>
+    }
 
-            @Override
-            public int modifiers() {
-                return field.getModifiers();
-            }
+    /**
+     * Whether values of an {@link Any} element should be matched to a type rather than use the declared one.
+     */
+    private boolean matches(Any any) {
+        return any != null && (any.value().length > 0 || discriminator != null);
+    }
 
-            @Override
-            public Class<?> getType() {
-                return field.getType();
-            }
+    /**
+     * The memoised data for {@param object}, if there is any.
+     */
+    private Map<String, Object> memoised(Object object, Class<?> type) {
+        if (memo == null || !this.memoisable(object, type)) return null;
+        return memo.get(object);
+    }
 
-            @Override
-            public String getName() {
-                return field.getName();
-            }
+    private boolean memoisable(Object object, Class<?> type) {
+        if (type != object.getClass() || selections.get() != null) return false;
+        return type.isRecord() || type.isAnnotationPresent(Immutable.class);
+    }
 
+    /**
+     * Makes an unmodifiable copy of marshalled data, sharing any parts that are already unmodifiable.
+     */
+    private <Value> Value freeze(Value value) {
+        //<editor-fold desc="Copies data into unmodifiable containers." defaultstate="collapsed">
+        if (value == null || value.getClass() == FROZEN_MAP || value.getClass() == FROZEN_LIST) return value;
+        if (value instanceof Map<?, ?> map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) copy.put(entry.getKey(), this.freeze(entry.getValue()));
+            return (Value) Collections.unmodifiableMap(copy);
+        } else if (value instanceof List<?> list) {
+            final List<Object> copy = new ArrayList<>(list.size());
+            for (Object object : list) copy.add(this.freeze(object));
+            return (Value) Collections.unmodifiableList(copy);
         }
-        //</editor-fold>
-        //<editor-fold desc="Object to Map" defaultstate="collapsed">
-        assert object != null : "Object was null.";
-        if (object instanceof Marshalled marshalled) {
-            container.putAll(marshalled.serialise());
-            return container;
-        }
-        final Set<Getter> fields = new HashSet<>();
-        if (type.isRecord()) for (RecordComponent component : type.getRecordComponents()) {
-            final Method accessor = component.getAccessor();
-            if (this.shouldSkip(accessor.getModifiers())) continue;
-            if (!accessor.canAccess(object)) accessor.trySetAccessible();
-            fields.add(new RecordGetter(component, accessor, object));
-        }
-        else {
-            for (Field field : type.getFields()) {
-                if (this.shouldSkip(field)) continue;
-                if (!field.canAccess(object)) field.trySetAccessible();
-                fields.add(new FieldGetter(field, object));
-            }
-            for (Field field : type.getDeclaredFields()) {
-                if (this.shouldSkip(field)) continue;
-                if (!field.canAccess(object)) field.trySetAccessible();
-                fields.add(new FieldGetter(field, object));
-            }
-        }
-        for (final Getter field : fields) {
-            try {
-                final Object value = field.get();
-                if (value == null && field.isAnnotationPresent(Optional.class)) continue;
-                final Class<?> expected = field.getType();
-                final String key = this.getName(field, field.getName());
-                if (key.equals("__data")) continue;
-                container.put(key, this.deconstruct(value, expected, field.isAnnotationPresent(Any.class)));
-            } catch (IllegalAccessException | InvocationTargetException ex) {
-                throw new GrammarException("Unable to read data '" + type.getSimpleName() + '.' + field + "' from " +
-                    "object:", ex);
-            }
-        }
-        return container;
+        return value;
         //</editor-fold>
     }
 
     /**
-     * Inserts data from a map of key-value pairs into an object's fields.
-     * The {@param object} is returned.
+     * Moves the current projection selection to the elements of a collection or array.
      *
-     * @param object      The object whose data is to be overwritten
-     * @param type        The type to use for data injection (a supertype of {@param object})
-     * @param container   The container from which to read the data
-     * @param <Type>      The object's type
-     * @param <Container> The container type
-     * @return The object, having been written to
+     * @return The previous selection, to be restored
      */
-    @Contract("null, null, null -> fail; _, _, _ -> param1")
-    @SuppressWarnings("unchecked")
-    protected <Type, Container extends Map<?, ?>> Type unmarshal(Type object, Class<?> type, Container container) {
-        //<editor-fold desc="Map to Object" defaultstate="collapsed">
-        assert object != null : "Object was null.";
-        assert !(object instanceof Class<?>) : "Classes cannot be written to.";
-        if (object instanceof Marshalled marshalled) {
-            marshalled.deserialise((Map<String, Object>) container);
-            return object;
-        }
-        if (type.isRecord()) throw new GrammarException("Data cannot be written to an existing Record object.");
-        final Set<Field> fields = new HashSet<>();
-        fields.addAll(List.of(type.getDeclaredFields()));
-        fields.addAll(List.of(type.getFields()));
-        for (final Field field : fields) {
-            final String key = this.getName(field);
-            if (key.equals("__data")) try {
-                if (!field.canAccess(object)) field.trySetAccessible();
-                assert Map.class.isAssignableFrom(field.getType()) : "Dataset field must accept map.";
-                final Map<String, Object> initial = (Map<String, Object>) field.get(object);
-                if (initial != null) initial.putAll((Map<? extends String, ?>) container);
-                else field.set(object, new LinkedHashMap<>(container));
-                continue;
-            } catch (IllegalAccessException ex) {
-                throw new GrammarException("Unable to store dataset object.", ex);
+    private Projection.Node elements() {
+        final Projection.Node selection = selections.get();
+        if (selection != null) this.selections.set(selection.element());
+        return selection;
+    }
+
+    private void restore(Projection.Node selection) {
+        if (selection != null) this.selections.set(selection);
+    }
+
+    /**
+     * Creates a record and every record nested inside its data, from the innermost outwards.
+     * The nested records are stored in the traversal, so the record constructors find them without recursing.
+     */
+    private Object prebuildRecord(Traversal traversal, Class<?> type, Map<?, ?> data) {
+        //<editor-fold desc="Creates nested records without recursion." defaultstate="collapsed">
+        final Object known = traversal.record(type, data);
+        if (known != null) return this.settle(traversal, known);
+        final List<Class<?>> types = new ArrayList<>();
+        final List<Map<?, ?>> maps = new ArrayList<>();
+        final List<Integer> levels = new ArrayList<>(); // how far each record is nested below this one
+        types.add(type);
+        maps.add(data);
+        levels.add(0);
+        for (int i = 0; i < maps.size(); i++) {
+            final Map<?, ?> map = maps.get(i);
+            final int level = levels.get(i);
+            for (RecordComponent component : components.get(types.get(i))) {
+                if (component.isAnnotationPresent(Any.class)) continue;
+                final Object value = map.get(this.getName(component, component.getName()));
+                final Class<?> expected = component.getType();
+                if (value instanceof Map<?, ?> child && expected.isRecord()) {
+                    types.add(expected);
+                    maps.add(child);
+                    levels.add(level + 1);
+                } else if (value instanceof Collection<?> list) {
+                    Class<?> element = null;
+                    if (expected.isArray()) element = expected.getComponentType();
+                    else if (component.getGenericType() instanceof ParameterizedType parameterized
+                        && parameterized.getActualTypeArguments().length == 1
+                        && parameterized.getActualTypeArguments()[0] instanceof Class<?> argument)
+                        element = argument;
+                    if (element == null || !element.isRecord()) continue;
+                    for (Object thing : list) {
+                        if (!(thing instanceof Map<?, ?> child)) continue;
+                        types.add(element);
+                        maps.add(child);
+                        levels.add(level + 2);
+                    }
+                }
             }
-            if (this.shouldSkip(field)) continue;
-            if (!container.containsKey(key)) continue;
-            if (!field.canAccess(object)) field.trySetAccessible();
-            final Any any = field.getAnnotation(Any.class);
-            final Object value = container.get(key);
-            final Class<?> expected;
-            if (any != null && any.value().length > 0) expected = this.getBestMatch(field.getType(), any, value);
-            else expected = field.getType();
-            try {
-                final Object existing = field.get(object);
-                if (existing != null && value instanceof Map map)
-                    this.unmarshal(existing, existing.getClass(), map);
-                else this.prepareFieldValue(object, field, expected, this.construct(value, expected));
-            } catch (Throwable ex) {
-                throw new GrammarException("Unable to write to object:", ex);
+        }
+        final Budget budget = limits != null ? budgets.get() : null;
+        final int depth = budget != null ? budget.depth() : 0;
+        try {
+            for (int i = maps.size() - 1; i >= 0; i--) {
+                final Map<?, ?> map = maps.get(i);
+                final Class<?> expected = types.get(i);
+                if (traversal.record(expected, map) != null) continue;
+                if (budget != null) budget.depth(depth + levels.get(i));
+                traversal.record(expected, map, this.createRecord(expected, map));
             }
+        } finally {
+            if (budget != null) budget.depth(depth);
         }
-        return object;
+        return this.settle(traversal, traversal.record(type, data));
         //</editor-fold>
     }
 
+    /**
+     * Passes on a prebuilt record, counting it as pending if it holds a value that is not filled in yet.
+     */
+    private Object settle(Traversal traversal, Object record) {
+        if (!traversal.settled(record)) traversal.pend();
+        return record;
+    }
+
     /**
      * Whether {@param field} should be skipped when marshalling.
      */
@@ -288,51 +1355,62 @@ public class Grammar {
 
     private void setPrimitiveField(Field field, Object source, Class<?> expected, Object value)
         throws IllegalAccessException {
-        //<editor-fold desc="Sets a field to a primitive value." defaultstate="collapsed">
-        if (expected == boolean.class && value instanceof Boolean boo) field.set(source, boo);
-        else if (value instanceof Number number) {
-            if (expected == byte.class) field.set(source, number.byteValue());
-            else if (expected == short.class) field.set(source, number.shortValue());
-            else if (expected == int.class) field.set(source, number.intValue());
-            else if (expected == long.class) field.set(source, number.longValue());
-            else if (expected == double.class) field.set(source, number.doubleValue());
-            else if (expected == float.class) field.set(source, number.floatValue());
-        } else if (value == null) {
-            if (expected == boolean.class) field.set(source, false);
-            else field.set(source, 0);
-        } else throw new UnmarshallingException("Could not set field '" + field.getName()
-            + "' (as " + expected.getSimpleName() + ") to '"
+        final Object primitive = this.convertPrimitive(expected, value, "field", field.getName());
+        if (primitive != null) field.set(source, primitive);
+    }
+
+    /**
+     * Converts a marshalled value into the boxed form of a primitive type.
+     * Returns null if the value was rejected in lenient mode.
+     */
+    private Object convertPrimitive(Class<?> expected, Object value, String kind, Object target) {
+        //<editor-fold desc="Converts a primitive value." defaultstate="collapsed">
+        if (value == null) return this.getDefault(expected);
+        if (expected == boolean.class && value instanceof Boolean) return value;
+        if (expected == char.class && value instanceof Character) return value;
+        if (expected == int.class && value instanceof Integer) return value; // already boxed, so don't box again
+        if (expected == long.class && value instanceof Long) return value;
+        if (expected == double.class && value instanceof Double) return value;
+        if (value instanceof Number number) {
+            if (expected == byte.class) return number.byteValue();
+            else if (expected == short.class) return number.shortValue();
+            else if (expected == int.class) return number.intValue();
+            else if (expected == long.class) return number.longValue();
+            else if (expected == double.class) return number.doubleValue();
+            else if (expected == float.class) return number.floatValue();
+            else if (expected == char.class) return (char) number.intValue();
+        }
+        final String name = target == null ? kind : target instanceof String ? kind + " '" + target + "'" : kind + ' ' + target;
+        this.reject("Could not set " + name + " (as " + expected.getSimpleName() + ") to '"
             + value + "' (" + value.getClass() + ").");
+        return null;
         //</editor-fold>
     }
 
+    /**
+     * Records a problem in the current {@link Report}, or throws it if there is no report.
+     */
+    private void reject(String message) {
+        final Report report = reports.get();
+        if (report == null) throw new UnmarshallingException(message);
+        report.add(message);
+    }
+
     /**
      * Scores a class based on how closely it matches the assigned data.
      */
     private float score(Class<?> type, Map<String, Object> map) {
         //<editor-fold desc="Scores how closely the type reflects the data map." defaultstate="collapsed">
         if (type.isPrimitive() || type == String.class) return -100F;
-        final Set<String> fields = new HashSet<>(), required = new HashSet<>();
-        for (Field field : type.getFields()) {
-            if (this.shouldSkip(field.getModifiers())) continue;
-            fields.add(this.getName(field));
-            if (field.isAnnotationPresent(Optional.class)) continue;
-            required.add(this.getName(field));
-        }
-        for (Field field : type.getDeclaredFields()) {
-            if (this.shouldSkip(field.getModifiers())) continue;
-            fields.add(this.getName(field));
-            if (field.isAnnotationPresent(Optional.class)) continue;
-            required.add(this.getName(field));
-        }
+        final FieldTable table = tables.get(type);
         float score = 0;
         for (String string : map.keySet()) {
             if (string == null || string.startsWith("__")) continue;
-            if (fields.contains(string)) score += 0.8F;
+            if (table.indexOf(string) >= 0) score += 0.8F;
             else score -= 0.8F;
         }
-        for (String string : required) {
-            if (!map.containsKey(string)) score -= 1.2F;
+        for (int i = 0; i < table.size(); i++) {
+            if (table.required[i] && !map.containsKey(table.keys[i])) score -= 1.2F;
         }
         return score;
         //</editor-fold>
@@ -360,10 +1438,22 @@ public class Grammar {
         }
         //</editor-fold>
         if (value instanceof CharSequence) return alternative;
+        if (value instanceof Map child && discriminator != null) {
+            final Class<?> tagged = this.getTagged(child.get(discriminator), alternative, any);
+            if (tagged != null) return tagged;
+        }
         if (value instanceof Map child) {
-            final Class<?>[] types = Arrays.copyOf(any.value(), any.value().length);
-            Arrays.sort(types, 0, types.length, Comparator.comparing(c -> this.score(c, child)));
-            return types[types.length - 1];
+            final Class<?>[] types = any.value();
+            if (types.length == 0) return alternative;
+            Class<?> best = types[0];
+            float highest = this.score(best, child);
+            for (int i = 1; i < types.length; i++) {
+                final float score = this.score(types[i], child);
+                if (score < highest) continue; // the last of equal scores wins, as with a stable sort
+                highest = score;
+                best = types[i];
+            }
+            return best;
         }
         return alternative;
     }
@@ -378,7 +1468,7 @@ public class Grammar {
         if (expected.isPrimitive()) this.setPrimitiveField(field, source, expected, value);
         else if (value == null) field.set(source, null);
         else if (value instanceof CharSequence sequence && expected == String.class)
-            field.set(source, sequence.toString());
+            field.set(source, this.canonical(this.checkLength(sequence).toString()));
 //        else if (value instanceof Map<?, ?> child) {
 //            final Object sub, existing = field.get(source);
 //            if (existing == null) field.set(source, sub = this.createObject(expected));
@@ -390,10 +1480,12 @@ public class Grammar {
             field.set(source, replacement);
         } else if (expected.isArray() && value instanceof Collection<?> list) {
             final Any any = field.getAnnotation(Any.class);
-            if (any != null && any.value().length > 0) field.set(source, this.constructArray(expected, any, list));
+            if (this.matches(any)) field.set(source, this.constructArray(expected, any, list));
             else field.set(source, this.constructArray(expected, list));
-        } else if (expected.isAssignableFrom(value.getClass()) || expected.isInstance(value)) field.set(source, value);
-        else throw new GrammarException("Value of '" + field.getName() + "' (" + source.getClass()
+        } else if (Map.class.isAssignableFrom(expected) && value instanceof Map<?, ?> map)
+            field.set(source, this.makeMap(source, field, map));
+        else if (expected.isAssignableFrom(value.getClass()) || expected.isInstance(value)) field.set(source, value);
+        else this.reject("Value of '" + field.getName() + "' (" + source.getClass()
                 .getSimpleName() + ") could not be mapped to type " + expected.getSimpleName());
         //</editor-fold>
     }
@@ -402,76 +1494,398 @@ public class Grammar {
         throws IllegalAccessException {
         final Collection replacement;
         //<editor-fold desc="Constructs and unmarshalls the data collection." defaultstate="collapsed">
-        final Any any = field.getAnnotation(Any.class);
-        Class<?> expectedElement = Object.class;
-        if (field.getGenericType() instanceof ParameterizedType parameterized) {
-            final Type[] types = parameterized.getActualTypeArguments();
-            if (types.length == 1) expectedElement = (Class<?>) types[0];
-        }
-        if (field.get(source) instanceof Collection current) (replacement = current).clear();
-        else if (!Modifier.isAbstract(expected.getModifiers()))
-            replacement = (Collection) this.createObject(field.getType());
-        else if (Set.class.isAssignableFrom(expected)) replacement = new LinkedHashSet();
-        else if (List.class.isAssignableFrom(expected)) replacement = new ArrayList();
-        else replacement = new LinkedList();
-        if (any != null && any.value().length > 0) for (Object thing : list) {
-            final Class<?> bestMatch = this.getBestMatch(expectedElement, any, thing);
-            replacement.add(this.construct(thing, bestMatch));
-        }
-        else for (Object thing : list) //noinspection unchecked
-            replacement.add(this.construct(thing, expectedElement));
+        final Budget budget = this.enter(list.size());
+        final Projection.Node selection = this.elements();
+        try {
+            final Any any = field.getAnnotation(Any.class);
+            final TypePlan plan = TypePlan.of(field, source.getClass());
+            final TypePlan element = plan.element() != null ? plan.element() : TypePlan.OBJECT;
+            if (this.slabbed(field.getType(), plan.element(), list.size()))
+                return (Collection) this.createSlab(element.type(), list);
+            final Object held = field.get(source);
+            // a slab is a read-only view of its buffer, so it is replaced rather than refilled
+            final Object existing = held instanceof RecordSlab<?> ? null : held;
+            if (recycle && existing instanceof List current) {
+                this.refillList(current, element, any, list);
+                return current;
+            }
+            if (existing instanceof Collection current) (replacement = current).clear();
+            else replacement = this.createCollection(field.getType());
+            if (this.matches(any)) for (Object thing : list) {
+                final Class<?> bestMatch = this.getBestMatch(element.type(), any, thing);
+                replacement.add(this.construct(thing, bestMatch));
+            }
+            else for (Object thing : list) //noinspection unchecked
+                replacement.add(this.construct(thing, element));
+        } finally {
+            this.exit(budget);
+            this.restore(selection);
+        }
+        //</editor-fold>
+        return replacement;
+    }
+
+    /**
+     * Overwrites the elements of {@param array} (which has the same length as {@param list}) in place.
+     */
+    private void refillArray(Object array, Any any, Collection<?> list) {
+        //<editor-fold desc="Reuses an array." defaultstate="collapsed">
+        final Budget budget = this.enter(list.size());
+        final Projection.Node selection = this.elements();
+        try {
+            final Class<?> component = array.getClass().getComponentType();
+            int index = 0;
+            if (component.isPrimitive()) for (Object thing : list) {
+                final Object primitive = this.convertPrimitive(component, thing, "element", index);
+                if (primitive != null) Array.set(array, index, primitive);
+                index++;
+            }
+            else {
+                final Object[] objects = (Object[]) array;
+                final boolean matches = this.matches(any);
+                for (Object thing : list) {
+                    final Class<?> type = matches ? this.getBestMatch(component, any, thing) : component;
+                    if (!this.recycle(objects[index], type, thing)) objects[index] = this.construct(thing, type);
+                    index++;
+                }
+            }
+        } finally {
+            this.exit(budget);
+            this.restore(selection);
+        }
+        //</editor-fold>
+    }
+
+    /**
+     * Unmarshalls {@param data} into the elements of {@param current} by position,
+     * then trims or extends it to the new length.
+     */
+    @SuppressWarnings("unchecked")
+    private void refillList(List current, TypePlan element, Any any, Collection<?> data) {
+        //<editor-fold desc="Reuses a list." defaultstate="collapsed">
+        final int size = current.size();
+        final boolean matches = this.matches(any);
+        int index = 0;
+        for (Object thing : data) {
+            final Class<?> type = matches ? this.getBestMatch(element.type(), any, thing) : element.type();
+            final Object existing = index < size ? current.get(index) : null;
+            if (!this.recycle(existing, type, thing)) {
+                final Object value = matches ? this.construct(thing, type) : this.construct(thing, element);
+                if (index < size) current.set(index, value);
+                else current.add(value);
+            }
+            index++;
+        }
+        if (index < size) current.subList(index, size).clear();
         //</editor-fold>
+    }
+
+    /**
+     * Unmarshalls {@param data} into an existing element, if it can be safely reused.
+     *
+     * @return Whether the element was reused
+     */
+    private boolean recycle(Object existing, Class<?> type, Object data) {
+        if (existing == null || existing.getClass() != type || !(data instanceof Map<?, ?> map)) return false;
+        if (existing instanceof Map<?, ?> || type.isRecord() || type.isAnnotationPresent(Immutable.class)) return false;
+        if (interner != null && interner.accepts(type)) return false; // may be shared
+        final Traversal traversal = this.traversal();
+        if (traversal != null) this.defer(traversal, () -> this.unmarshal(existing, type, map));
+        else this.unmarshal(existing, type, map);
+        return true;
+    }
+
+    /**
+     * Whether a list of {@param size} elements of {@param element} should be stored in a {@link RecordSlab}.
+     */
+    private boolean slabbed(Class<?> type, TypePlan element, int size) {
+        if (slabThreshold <= 0 || size < slabThreshold || element == null) return false;
+        return type.isAssignableFrom(RecordSlab.class) && RecordSlab.accepts(element.type());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private RecordSlab<?> createSlab(Class<?> type, Collection<?> list) {
+        //<editor-fold desc="Unmarshalls primitive records off-heap." defaultstate="collapsed">
+        final Budget budget = this.enter(list.size());
+        try {
+            final RecordSlab slab = new RecordSlab(type, list.size());
+            final RecordComponent[] components = slab.components();
+            final String[] keys = new String[components.length];
+            for (int i = 0; i < keys.length; i++) keys[i] = this.getName(components[i], components[i].getName());
+            int index = 0;
+            for (Object thing : list) {
+                if (thing instanceof Map<?, ?> map) for (int i = 0; i < keys.length; i++) {
+                    final Class<?> expected = components[i].getType();
+                    final Object value = this.convertPrimitive(expected, map.get(keys[i]), "component", keys[i]);
+                    slab.write(index, i, value != null ? value : this.getDefault(expected));
+                }
+                else if (type.isInstance(thing)) slab.set(index, (Record) thing);
+                else if (thing != null) this.reject("Element " + index + " could not be mapped to type "
+                    + type.getSimpleName());
+                index++;
+            }
+            return slab;
+        } finally {
+            this.exit(budget);
+        }
+        //</editor-fold>
+    }
+
+    private Map makeMap(Object source, Field field, Map<?, ?> map) throws IllegalAccessException {
+        final TypePlan plan = TypePlan.of(field, source.getClass());
+        if (plan.simple()) return map;
+        final Map replacement;
+        if (field.get(source) instanceof Map current && current != map) (replacement = current).clear();
+        else replacement = this.createMap(field.getType());
+        this.fillMap(replacement, plan, map);
         return replacement;
     }
 
+    private Collection createCollection(Class<?> expected) {
+        if (!Modifier.isAbstract(expected.getModifiers())) return (Collection) this.createObject(expected);
+        else if (Set.class.isAssignableFrom(expected)) return new LinkedHashSet();
+        else if (List.class.isAssignableFrom(expected)) return new ArrayList();
+        else return new LinkedList();
+    }
+
+    private Map createMap(Class<?> expected) {
+        if (!Modifier.isAbstract(expected.getModifiers())) return (Map) this.createObject(expected);
+        else if (SortedMap.class.isAssignableFrom(expected)) return new TreeMap();
+        else return new LinkedHashMap();
+    }
+
+    private void fillMap(Map replacement, TypePlan plan, Map<?, ?> map) {
+        final Budget budget = this.enter(map.size());
+        try {
+            final TypePlan key = plan.key() != null ? plan.key() : TypePlan.OBJECT;
+            final TypePlan value = plan.element() != null ? plan.element() : TypePlan.OBJECT;
+            final Projection.Node selection = selections.get();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                final Projection.Node node = selection != null ? selection.select(String.valueOf(entry.getKey())) : null;
+                if (selection != null && node == null) continue;
+                if (node != null) this.selections.set(node);
+                try {
+                    replacement.put(this.constructKey(entry.getKey(), key.type()), this.construct(entry.getValue(), value));
+                } finally {
+                    this.restore(selection);
+                }
+            }
+        } finally {
+            this.exit(budget);
+        }
+    }
+
+    /**
+     * Converts a marshalled map key back into its expected type.
+     */
+    private Object constructKey(Object key, Class<?> expected) {
+        if (key == null || expected.isInstance(key)) return key;
+        if (key instanceof String text) {
+            if (Number.class.isAssignableFrom(expected) && !this.isNumeric(text, expected == Double.class
+                || expected == Float.class))
+                throw new GrammarException("Map key '" + text + "' is not a " + expected.getSimpleName(), null, true, false);
+            try {
+                if (expected == Integer.class) return Integer.valueOf(text);
+                if (expected == Long.class) return Long.valueOf(text);
+                if (expected == Short.class) return Short.valueOf(text);
+                if (expected == Byte.class) return Byte.valueOf(text);
+                if (expected == Double.class) return Double.valueOf(text);
+                if (expected == Float.class) return Float.valueOf(text);
+            } catch (NumberFormatException ex) {
+                throw new GrammarException("Map key '" + text + "' is not a " + expected.getSimpleName(), ex, true, false);
+            }
+            if (expected == Character.class && text.length() == 1) return text.charAt(0);
+            if (expected == Boolean.class) return Boolean.valueOf(text);
+        }
+        return this.construct(key, expected);
+    }
+
+    /**
+     * Whether {@param text} looks like a number, checked before parsing so that dirty data
+     * does not cost a stack trace for every value.
+     */
+    private boolean isNumeric(String text, boolean decimal) {
+        if (text.isEmpty()) return false;
+        if (decimal && (text.equals("NaN") || text.endsWith("Infinity"))) return true;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') continue;
+            if ((c == '-' || c == '+') && (i == 0 || decimal)) continue;
+            if (decimal && (c == '.' || c == 'e' || c == 'E')) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a UUID, checking its form first so that a bad one is rejected without taking a stack trace.
+     */
+    private UUID createUUID(String text) {
+        //<editor-fold desc="Checks and parses a UUID." defaultstate="collapsed">
+        int groups = 1, length = 0;
+        boolean valid = text.length() <= 36;
+        for (int i = 0; valid && i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '-') {
+                valid = length > 0;
+                groups++;
+                length = 0;
+            } else {
+                length++;
+                valid = Character.digit(c, 16) >= 0 && length <= (groups == 1 ? 8 : groups == 5 ? 12 : 4);
+            }
+        }
+        if (!valid || groups != 5 || length == 0)
+            throw new GrammarException("Invalid UUID string: " + text, null, true, false);
+        return UUID.fromString(text);
+        //</editor-fold>
+    }
+
+    /**
+     * Constructs a complex object from its marshalled type, following the generic type arguments in {@param plan}.
+     */
+    private Object construct(Object data, TypePlan plan) {
+        //<editor-fold desc="Constructs nested generic types." defaultstate="collapsed">
+        if (data == null || plan.simple()) return this.construct(data, plan.type());
+        final Class<?> type = plan.type();
+        if (data instanceof Collection<?> list && type.isArray()) {
+            final Budget budget = this.enter(list.size());
+            final Projection.Node selection = this.elements();
+            try {
+                final Object array = Array.newInstance(plan.element().type(), list.size());
+                int index = 0;
+                for (Object thing : list) Array.set(array, index++, this.construct(thing, plan.element()));
+                return array;
+            } finally {
+                this.exit(budget);
+                this.restore(selection);
+            }
+        } else if (data instanceof Collection<?> list && this.slabbed(type, plan.element(), list.size())) {
+            return this.createSlab(plan.element().type(), list);
+        } else if (data instanceof Collection<?> list && Collection.class.isAssignableFrom(type)) {
+            final Budget budget = this.enter(list.size());
+            final Projection.Node selection = this.elements();
+            try {
+                final Collection replacement = this.createCollection(type);
+                for (Object thing : list) replacement.add(this.construct(thing, plan.element()));
+                return replacement;
+            } finally {
+                this.exit(budget);
+                this.restore(selection);
+            }
+        } else if (data instanceof Map<?, ?> map && Map.class.isAssignableFrom(type)) {
+            final Map replacement = this.createMap(type);
+            this.fillMap(replacement, plan, map);
+            return replacement;
+        }
+        return this.construct(data, type);
+        //</editor-fold>
+    }
+
     /**
      * Constructs a complex object from its marshalled type.
      */
     protected Object construct(Object data, Class<?> expected) {
         if (data == null) return null;
         else if (expected.isPrimitive()) return data;
-        else if (expected == String.class && data instanceof CharSequence sequence) return sequence.toString();
+        else if (expected == String.class && data instanceof CharSequence sequence)
+            return this.canonical(this.checkLength(sequence).toString());
         else if (data instanceof Collection<?> list && expected.isArray()) return this.constructArray(expected, list);
         else if (data instanceof Map<?, ?> map && !Map.class.isAssignableFrom(expected)) {
-            if (expected.isRecord())
+            final Traversal traversal = this.traversal();
+            if (expected.isRecord()) {
+                if (traversal != null) return this.prebuildRecord(traversal, expected, map);
                 return this.createRecord(expected, map);
-            else return this.unmarshal(this.createObject(expected), expected, map);
+            }
+            final Object object = this.createObject(expected);
+            if (traversal == null) return this.canonical(this.unmarshal(object, expected, map));
+            this.defer(traversal, () -> this.unmarshal(object, expected, map));
+            traversal.pend();
+            return object;
         } else if (expected.isEnum()) return this.createEnum(expected, data);
-        else if (expected == UUID.class && data instanceof String text) return UUID.fromString(text);
-        else return data;
+        else if (expected == UUID.class && data instanceof String text) return this.canonical(this.createUUID(text));
+        else return this.canonical(data);
     }
 
     @SuppressWarnings({"unchecked", "TypeParameterHidesVisibleType"})
     private <Type> Type createRecord(Class<Type> expected, @SuppressWarnings("rawtypes") Map data) {
         //<editor-fold desc="Creates a record from its component data." defaultstate="collapsed">
-        final RecordComponent[] components = expected.getRecordComponents();
-        final Object[] parameters = new Object[components.length];
-        for (int i = 0; i < components.length; i++) {
-            final RecordComponent component = components[i];
-            final Any any = component.getAnnotation(Any.class);
-            final Class<?> type;
-            if (any != null && any.value().length > 0) type = this.getBestMatch(component.getType(), any, data);
-            else type = component.getType();
-            final String name = this.getName(component, component.getName());
-            if (type.isPrimitive()) parameters[i] = data.getOrDefault(name, this.getDefault(type));
-            else {
+        final Budget budget = this.enter(data.size());
+        final Report report = reports.get();
+        final Projection.Node selection = selections.get();
+        final Traversal traversal = this.traversal();
+        final int pending = traversal != null ? traversal.pending() : 0;
+        try {
+            final RecordPlan plan = records.get(expected);
+            final boolean omit = this.omissions(expected) != null;
+            final Object[] parameters = new Object[plan.size()];
+            for (int i = 0; i < parameters.length; i++) {
+                final String name = plan.keys[i];
+                final Class<?> declared = plan.types[i];
+                final Projection.Node node = selection != null ? selection.select(name) : null;
+                if (selection != null && node == null) {
+                    parameters[i] = plan.defaults[i];
+                    continue;
+                }
                 final Object value = data.get(name);
-                if (type.isInstance(value)) parameters[i] = value;
-                else parameters[i] = this.construct(value, type);
+                if (omit && value == null && !data.containsKey(name)) {
+                    parameters[i] = this.getEmpty(declared);
+                    continue;
+                }
+                final Any any = plan.any[i];
+                final Class<?> type = this.matches(any) ? this.getBestMatch(declared, any, value) : declared;
+                if (report != null) report.enter(name);
+                if (node != null) this.selections.set(node);
+                try {
+                    if (type.isPrimitive()) {
+                        final Object primitive = this.convertPrimitive(type, value, "component", name);
+                        parameters[i] = primitive != null ? primitive : plan.defaults[i];
+                    } else if (type == declared && plan.generic[i]) parameters[i] = this.construct(value, plan.plans[i]);
+                    else if (type.isInstance(value)) parameters[i] = value;
+                    else parameters[i] = this.construct(value, type);
+                } catch (LimitException ex) {
+                    throw ex;
+                } catch (RuntimeException ex) {
+                    if (report == null) throw ex;
+                    report.add(ex);
+                    parameters[i] = plan.defaults[i];
+                } finally {
+                    if (report != null) report.exit();
+                    this.restore(selection);
+                }
             }
-        }
-        final Constructor<Type> constructor = this.getCanonicalConstructor(expected);
-        try {
-            if (!constructor.canAccess(null)) constructor.trySetAccessible();
-        } catch (SecurityException ignored) {}
-        try {
-            return constructor.newInstance(parameters);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new GrammarException(e);
+            final Type record = (Type) plan.create(parameters);
+            // a component still waiting for its fields could make this equal to a different record
+            if (traversal == null || traversal.pending() == pending) return this.canonical(record);
+            traversal.unsettle(record);
+            return record;
+        } finally {
+            this.exit(budget);
         }
         //</editor-fold>
     }
 
+    /**
+     * Resolves how records of {@param type} are created from their data.
+     */
+    private RecordPlan createRecordPlan(Class<?> type) {
+        final RecordComponent[] components = Grammar.components.get(type);
+        final String[] keys = new String[components.length];
+        final Class<?>[] types = new Class<?>[components.length];
+        final TypePlan[] plans = new TypePlan[components.length];
+        final Any[] any = new Any[components.length];
+        final Object[] defaults = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            final RecordComponent component = components[i];
+            keys[i] = this.getName(component, component.getName());
+            types[i] = component.getType();
+            plans[i] = TypePlan.of(component);
+            any[i] = component.getAnnotation(Any.class);
+            defaults[i] = this.getDefault(types[i]);
+        }
+        return new RecordPlan(keys, types, plans, any, defaults, this.getCanonicalConstructor(type));
+    }
+
     private Object getDefault(Class<?> type) {
         if (type == byte.class) return (byte) 0;
         if (type == short.class) return (short) 0;
@@ -484,15 +1898,9 @@ public class Grammar {
         return null;
     }
 
+    @SuppressWarnings("unchecked")
     private <Type> Constructor<Type> getCanonicalConstructor(Class<Type> record) {
-        Class<?>[] componentTypes = Arrays.stream(record.getRecordComponents())
-            .map(RecordComponent::getType)
-            .toArray(Class<?>[]::new);
-        try {
-            return record.getDeclaredConstructor(componentTypes);
-        } catch (NoSuchMethodException e) {
-            throw new GrammarException("Record's canonical constructor was missing.", e);
-        }
+        return (Constructor<Type>) canonicals.get(record);
     }
 
     /**
@@ -500,47 +1908,58 @@ public class Grammar {
      */
     protected Object constructArray(Class<?> type, Collection<?> list) {
         //<editor-fold desc="List to Array" defaultstate="collapsed">
-        final Class<?> component = type.getComponentType();
-        final Object object = Array.newInstance(component, list.size());
-        final Object[] objects = list.toArray();
-        if (component.isPrimitive()) {
-            if (component == boolean.class) for (int i = 0; i < objects.length; i++)
-                Array.setBoolean(object, i, (boolean) objects[i]);
-            else if (component == int.class) for (int i = 0; i < objects.length; i++)
-                Array.setInt(object, i, ((Number) objects[i]).intValue());
-            else if (component == long.class) for (int i = 0; i < objects.length; i++)
-                Array.setLong(object, i, ((Number) objects[i]).longValue());
-            else if (component == double.class) for (int i = 0; i < objects.length; i++)
-                Array.setDouble(object, i, ((Number) objects[i]).doubleValue());
-            else if (component == float.class) for (int i = 0; i < objects.length; i++)
-                Array.setFloat(object, i, ((Number) objects[i]).floatValue());
-        } else if (component.isEnum()) for (int i = 0; i < objects.length; i++)
-            Array.set(object, i, this.createEnum(component, objects[i]));
-        else if (component == UUID.class) for (int i = 0; i < objects.length; i++)
-            Array.set(object, i, UUID.fromString(objects[i].toString()));
-        else {
-            final Object[] array = (Object[]) object;
-            for (int i = 0; i < objects.length; i++) array[i] = this.construct(objects[i], component);
+        final Budget budget = this.enter(list.size());
+        final Projection.Node selection = this.elements();
+        try {
+            final Class<?> component = type.getComponentType();
+            final Object object = Array.newInstance(component, list.size());
+            int index = 0;
+            if (component.isPrimitive()) {
+                if (object instanceof boolean[] array) for (Object thing : list) array[index++] = (boolean) thing;
+                else if (object instanceof int[] array) for (Object thing : list)
+                    array[index++] = ((Number) thing).intValue();
+                else if (object instanceof long[] array) for (Object thing : list)
+                    array[index++] = ((Number) thing).longValue();
+                else if (object instanceof double[] array) for (Object thing : list)
+                    array[index++] = ((Number) thing).doubleValue();
+                else if (object instanceof float[] array) for (Object thing : list)
+                    array[index++] = ((Number) thing).floatValue();
+            } else if (component.isEnum()) {
+                final Object[] array = (Object[]) object;
+                for (Object thing : list) array[index++] = this.createEnum(component, thing);
+            } else if (component == UUID.class) {
+                final Object[] array = (Object[]) object;
+                for (Object thing : list) array[index++] = this.canonical(this.createUUID(thing.toString()));
+            } else {
+                final Object[] array = (Object[]) object;
+                for (Object thing : list) array[index++] = this.construct(thing, component);
+            }
+            return object;
+        } finally {
+            this.exit(budget);
+            this.restore(selection);
         }
-        return object;
         //</editor-fold>
     }
 
     protected Object constructArray(Class<?> type, Any any, Collection<?> list) {
         //<editor-fold desc="List to Array" defaultstate="collapsed">
-        final Class<?> component = type.getComponentType();
-        final Object object = Array.newInstance(component, list.size());
-        final Object[] objects = list.toArray();
-        if (component.isEnum()) for (int i = 0; i < objects.length; i++)
-            Array.set(object, i, this.createEnum(component, objects[i]));
-        else if (component == UUID.class) for (int i = 0; i < objects.length; i++)
-            Array.set(object, i, UUID.fromString(objects[i].toString()));
-        else {
+        final Budget budget = this.enter(list.size());
+        final Projection.Node selection = this.elements();
+        try {
+            final Class<?> component = type.getComponentType();
+            final Object object = Array.newInstance(component, list.size());
             final Object[] array = (Object[]) object;
-            for (int i = 0; i < objects.length; i++)
-                array[i] = this.construct(objects[i], this.getBestMatch(component, any, object));
+            int index = 0;
+            if (component.isEnum()) for (Object thing : list) array[index++] = this.createEnum(component, thing);
+            else if (component == UUID.class)
+                for (Object thing : list) array[index++] = this.canonical(this.createUUID(thing.toString()));
+            else for (Object thing : list) array[index++] = this.construct(thing, this.getBestMatch(component, any, thing));
+            return object;
+        } finally {
+            this.exit(budget);
+            this.restore(selection);
         }
-        return object;
         //</editor-fold>
     }
 
@@ -551,34 +1970,105 @@ public class Grammar {
         //<editor-fold desc="Complex to Simple" defaultstate="collapsed">
         if (value == null) return null;
         else if (value instanceof String || value instanceof Number || value instanceof Boolean) return value;
-        else if (value instanceof Collection<?> list) {
+        final Traversal traversal = this.traversal();
+        if (value instanceof RecordSlab<?> slab && accessors.get(slab.type()).length == slab.components().length)
+            return this.deconstructSlab(slab);
+        if (value instanceof Collection<?> list) {
             final List<Object> replacement = new ArrayList<>(list.size());
-            for (Object object : list)
-                replacement.add(this.deconstruct(object, object == null ? null : object.getClass(), any));
+            if (traversal != null) this.defer(traversal, () -> this.deconstructCollection(list, replacement, any));
+            else this.deconstructCollection(list, replacement, any);
             return replacement;
         } else if (value instanceof Map<?, ?> map) {
             final Map<String, Object> replacement = new LinkedHashMap<>(map.size());
-            for (Map.Entry<?, ?> entry : map.entrySet()) {
-                final Object object = entry.getValue();
-                replacement.put(String.valueOf(entry.getKey()), this.deconstruct(entry.getValue(), object == null ?
-                    null : object.getClass(), any));
-            }
+            if (traversal != null) this.defer(traversal, () -> this.deconstructMap(map, replacement, any));
+            else this.deconstructMap(map, replacement, any);
             return replacement;
         }
-        if (value.getClass().isEnum()) return ((Enum) value).name();
+        if (value instanceof Enum<?> constant) return this.deconstructEnum(constant);
         else if (value.getClass().isArray()) {
             final List<Object> list = new ArrayList<>();
-            this.deconstructArray(value, component.getComponentType(), list, any);
+            if (traversal != null)
+                this.defer(traversal, () -> this.deconstructArray(value, component.getComponentType(), list, any));
+            else this.deconstructArray(value, component.getComponentType(), list, any);
             return list;
         }
+        final Class<?> type = any ? value.getClass() : component;
+        final boolean tagged = any && discriminator != null && !(value instanceof Marshalled);
+        final Map<String, Object> known = tagged ? null : this.memoised(value, type);
+        if (known != null) return known;
         final Map<String, Object> map = new LinkedHashMap<>();
-        this.marshal(value, (Class<?>) (any ? value.getClass() : component), map);
+        if (tagged) map.put(discriminator, this.getTag(type));
+        if (traversal != null) this.defer(traversal, () -> this.marshal(value, type, map));
+        else this.marshal(value, type, map);
         return map;
         //</editor-fold>
     }
 
+    private void deconstructCollection(Collection<?> list, List<Object> replacement, boolean any) {
+        final Projection.Node selection = this.elements();
+        try {
+            for (Object object : list)
+                replacement.add(this.deconstruct(object, object == null ? null : object.getClass(), any));
+        } finally {
+            this.restore(selection);
+        }
+    }
+
+    /**
+     * Marshals a {@link RecordSlab} straight from its buffer, without creating the records.
+     */
+    private List<Object> deconstructSlab(RecordSlab<?> slab) {
+        //<editor-fold desc="Slab to List" defaultstate="collapsed">
+        final Accessor[] fields = accessors.get(slab.type());
+        final Object[] omissions = this.omissions(slab.type());
+        final Projection.Node selection = this.elements(), element = selections.get();
+        try {
+            final List<Object> list = new ArrayList<>(slab.size());
+            for (int index = 0; index < slab.size(); index++) {
+                final Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < fields.length; i++) {
+                    if (element != null && element.select(fields[i].key) == null) continue;
+                    final Object value = slab.read(index, i);
+                    if (this.omitted(omissions, i, value, fields[i].type)) continue;
+                    map.put(fields[i].key, value);
+                }
+                list.add(map);
+            }
+            return list;
+        } finally {
+            this.restore(selection);
+        }
+        //</editor-fold>
+    }
+
+    private void deconstructMap(Map<?, ?> map, Map<String, Object> replacement, boolean any) {
+        final Projection.Node selection = selections.get();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            final String key = String.valueOf(entry.getKey());
+            final Projection.Node node = selection != null ? selection.select(key) : null;
+            if (selection != null && node == null) continue;
+            final Object object = entry.getValue();
+            if (node != null) this.selections.set(node);
+            try {
+                replacement.put(key, this.deconstruct(object, object == null ? null : object.getClass(), any));
+            } finally {
+                this.restore(selection);
+            }
+        }
+    }
+
     protected void deconstructArray(Object array, Class<?> component, List<Object> list, boolean any) {
         //<editor-fold desc="Array to List" defaultstate="collapsed">
+        final Projection.Node selection = this.elements();
+        try {
+            this.deconstructElements(array, component, list, any);
+        } finally {
+            this.restore(selection);
+        }
+        //</editor-fold>
+    }
+
+    private void deconstructElements(Object array, Class<?> component, List<Object> list, boolean any) {
         if (component.isPrimitive()) {
             if (array instanceof int[] numbers) for (int number : numbers) list.add(number);
             else if (array instanceof long[] numbers) for (long number : numbers) list.add(number);
@@ -590,7 +2080,6 @@ public class Grammar {
             if (any) for (final Object object : objects) list.add(this.deconstruct(object, object.getClass(), true));
             else for (final Object object : objects) list.add(this.deconstruct(object, component, false));
         }
-        //</editor-fold>
     }
 
     protected String getName(Field field) {
@@ -603,10 +2092,20 @@ public class Grammar {
         else return name;
     }
 
-    @SuppressWarnings("all")
+    /**
+     * Finds an enum constant from its marshalled name or ordinal.
+     */
     protected Object createEnum(Class<?> type, Object value) {
-        if (value instanceof Number number) return type.getEnumConstants()[number.intValue()];
-        return Enum.valueOf((Class) type, value.toString());
+        return EnumTable.of(type).get(value);
+    }
+
+    /**
+     * Converts an enum constant into its marshalled form.
+     * This can be overridden to provide a more compact code.
+     */
+    protected Object deconstructEnum(Enum<?> value) {
+        if (enumOrdinals) return value.ordinal();
+        return value.name();
     }
 
     @SuppressWarnings("unchecked")
@@ -642,13 +2141,17 @@ public class Grammar {
     @SuppressWarnings("unchecked")
     protected <Type> Type createObject(Class<Type> type) {
         if (type.isArray()) return (Type) Array.newInstance(type, 0);
+        if (pool != null && !Collection.class.isAssignableFrom(type) && !Map.class.isAssignableFrom(type)) {
+            final Object spare = pool.take(type);
+            if (spare != null && spare.getClass() == type) return (Type) spare;
+        }
         if (type.isInterface()) throw new GrammarException("Unable to create an interface: " + type.getSimpleName());
         try {
             final Constructor<Type> constructor = this.getConstructor(type);
             return constructor.newInstance();
         } catch (InvocationTargetException | InstantiationException | IllegalAccessException |
                  NoSuchMethodException e) {
-            throw new GrammarException("Unable to create '" + type.getSimpleName() + "' object.", e);
+            throw new GrammarException("Unable to create '" + type.getSimpleName() + "' object.", e, true, false);
         }
     }
 
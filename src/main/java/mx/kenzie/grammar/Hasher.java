@@ -0,0 +1,70 @@
+package mx.kenzie.grammar;
+
+/**
+ * Accumulates two independent 64-bit lanes of a {@link Fingerprint}.
+ * Values are mixed in order; unordered entries (such as map keys) are each hashed by a child
+ * and {@link #combine(Hasher)}d into a commutative sum, which is mixed in at the end.
+ */
+final class Hasher {
+
+    static final int NULL = 1, STRING = 2, INTEGER = 3, LONG = 4, DOUBLE = 5, FLOAT = 6, BOOLEAN = 7, NUMBER = 8,
+        LIST = 9, MAP = 10;
+
+    private long first = 0x243F6A8885A308D3L, second = 0x13198A2E03707344L;
+    private long firstSum, secondSum;
+    private int entries;
+
+    void put(long value) {
+        this.first = Long.rotateLeft(first ^ value * 0x9E3779B97F4A7C15L, 31) * 0xBF58476D1CE4E5B9L;
+        this.second = Long.rotateLeft(second + value * 0xC2B2AE3D27D4EB4FL, 27) * 0x94D049BB133111EBL + 0x52DCE729L;
+    }
+
+    void put(int tag, long value) {
+        this.put(tag);
+        this.put(value);
+    }
+
+    void put(CharSequence string) {
+        final int length = string.length();
+        this.put(STRING, length);
+        int index = 0;
+        for (; index + 4 <= length; index += 4)
+            this.put((long) string.charAt(index) << 48 | (long) string.charAt(index + 1) << 32
+                | (long) string.charAt(index + 2) << 16 | string.charAt(index + 3));
+        long rest = 0;
+        for (; index < length; index++) rest = rest << 16 | string.charAt(index);
+        this.put(rest);
+    }
+
+    void reset() {
+        this.first = 0x243F6A8885A308D3L;
+        this.second = 0x13198A2E03707344L;
+    }
+
+    void combine(Hasher entry) {
+        this.firstSum += mix(entry.first);
+        this.secondSum += mix(entry.second);
+        this.entries++;
+    }
+
+    void close() {
+        this.put(MAP, entries);
+        this.put(firstSum);
+        this.put(secondSum);
+        this.firstSum = secondSum = 0;
+        this.entries = 0;
+    }
+
+    Fingerprint finish() {
+        return new Fingerprint(mix(second), mix(first));
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        return value ^ value >>> 33;
+    }
+
+}
@@ -0,0 +1,42 @@
+package mx.kenzie.grammar;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+
+/**
+ * A bounded cache from object identity to marshalled data.
+ * Each object hashes to a single slot and replaces whatever was there before.
+ * Keys are held weakly, so the cache never keeps an object alive.
+ */
+final class IdentityCache {
+
+    private final Entry[] slots;
+    private final int mask;
+
+    IdentityCache(int capacity) {
+        this.slots = new Entry[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+        this.mask = slots.length - 1;
+    }
+
+    Map<String, Object> get(Object key) {
+        final Entry entry = slots[System.identityHashCode(key) & mask];
+        if (entry != null && entry.get() == key) return entry.value;
+        return null;
+    }
+
+    void put(Object key, Map<String, Object> value) {
+        this.slots[System.identityHashCode(key) & mask] = new Entry(key, value);
+    }
+
+    private static final class Entry extends WeakReference<Object> {
+
+        final Map<String, Object> value;
+
+        Entry(Object key, Map<String, Object> value) {
+            super(key);
+            this.value = value;
+        }
+
+    }
+
+}
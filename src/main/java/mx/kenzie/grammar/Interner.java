@@ -0,0 +1,38 @@
+package mx.kenzie.grammar;
+
+import java.util.Set;
+
+/**
+ * A bounded table of canonical values, so that equal values produced by unmarshalling can share one instance.
+ * Each value hashes to a single slot; a different value in the same slot replaces the old one.
+ */
+final class Interner {
+
+    private final Object[] slots;
+    private final int mask;
+    private final Set<Class<?>> types;
+
+    Interner(int capacity, Set<Class<?>> types) {
+        this.slots = new Object[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+        this.mask = slots.length - 1;
+        this.types = types;
+    }
+
+    /**
+     * Whether values of {@param type} are canonicalised.
+     */
+    boolean accepts(Class<?> type) {
+        return type.isRecord() || types.contains(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    <Value> Value intern(Value value) {
+        final int hash = value.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & mask;
+        final Object existing = slots[slot];
+        if (existing != null && existing.equals(value)) return (Value) existing;
+        this.slots[slot] = value;
+        return value;
+    }
+
+}
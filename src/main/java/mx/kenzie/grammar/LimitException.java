@@ -0,0 +1,12 @@
+package mx.kenzie.grammar;
+
+/**
+ * Thrown when unmarshalling data would exceed one of the configured {@link Limits}.
+ */
+public class LimitException extends GrammarException {
+
+    public LimitException(String message) {
+        super(message);
+    }
+
+}
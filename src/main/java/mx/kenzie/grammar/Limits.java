@@ -0,0 +1,21 @@
+package mx.kenzie.grammar;
+
+/**
+ * Bounds the work that unmarshalling untrusted data is allowed to do.
+ * A bound of zero or less leaves that measure unlimited.
+ *
+ * @param depth    The maximum nesting depth of objects, collections and arrays
+ * @param elements The maximum number of entries in a single map, collection or array
+ * @param objects  The maximum number of objects created by a single unmarshal call
+ * @param length   The maximum length of a string
+ */
+public record Limits(int depth, int elements, int objects, int length) {
+
+    public Limits {
+        if (depth <= 0) depth = Integer.MAX_VALUE;
+        if (elements <= 0) elements = Integer.MAX_VALUE;
+        if (objects <= 0) objects = Integer.MAX_VALUE;
+        if (length <= 0) length = Integer.MAX_VALUE;
+    }
+
+}
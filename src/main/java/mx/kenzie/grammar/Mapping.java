@@ -0,0 +1,30 @@
+package mx.kenzie.grammar;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+
+/**
+ * A cached plan for moving data directly from objects of one class into another, field by field.
+ * Each target slot (a field, or a record component) has the source member it reads from,
+ * which is null if the source has no matching key.
+ */
+final class Mapping {
+
+    final AccessibleObject[] readers;
+    final Field[] fields;
+    final TypePlan[] plans;
+    final boolean[] optional, any;
+    final Constructor<?> constructor;
+
+    Mapping(AccessibleObject[] readers, Field[] fields, TypePlan[] plans, boolean[] optional, boolean[] any,
+            Constructor<?> constructor) {
+        this.readers = readers;
+        this.fields = fields;
+        this.plans = plans;
+        this.optional = optional;
+        this.any = any;
+        this.constructor = constructor;
+    }
+
+}
@@ -0,0 +1,17 @@
+package mx.kenzie.grammar;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose fields are left out of its marshalled data when they hold their default value
+ * (null, zero, false or an empty collection, map or array) and a new instance holds the same one.
+ *
+ * @see Grammar#omitDefaults
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface OmitDefaults {
+}
@@ -0,0 +1,17 @@
+package mx.kenzie.grammar;
+
+/**
+ * A source of spare instances for unmarshalling to fill, instead of creating new objects.
+ * An instance keeps any field that is missing from the data it is filled with,
+ * so pooled objects should be reset (or fully overwritten) before they are returned to the pool.
+ */
+@FunctionalInterface
+public interface Pool {
+
+    /**
+     * @param type The class that is needed
+     * @return A spare instance of exactly that class, or null to create a new one
+     */
+    Object take(Class<?> type);
+
+}
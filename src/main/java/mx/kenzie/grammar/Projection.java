@@ -0,0 +1,94 @@
+package mx.kenzie.grammar;
+
+import java.util.*;
+
+/**
+ * A compiled selection of the paths to include in (or exclude from) marshalling and unmarshalling.
+ * Paths are dot-separated keys, such as {@code "owner.address.city"}.
+ * A {@code *} segment matches any key; collection and array elements share the path of their container,
+ * so {@code "items.name"} and {@code "items.*.name"} select the same data.
+ * <p>
+ * Data outside the selection is neither read nor created.
+ * A projection is immutable and can be reused.
+ */
+public final class Projection {
+
+    private static final Node ALL = new Node();
+
+    static {
+        ALL.all = true;
+    }
+
+    private final Node root;
+
+    private Projection(Collection<String> includes, Collection<String> excludes) {
+        this.root = new Node();
+        this.root.all = includes.isEmpty();
+        for (String path : includes) this.root.walk(path).all = true;
+        for (String path : excludes) this.root.walk(path).excluded = true;
+        this.root.settle(false);
+    }
+
+    /**
+     * Selects only the given paths (and everything beneath them).
+     */
+    public static Projection include(String... paths) {
+        return new Projection(List.of(paths), List.of());
+    }
+
+    /**
+     * Selects everything except the given paths.
+     */
+    public static Projection exclude(String... paths) {
+        return new Projection(List.of(), List.of(paths));
+    }
+
+    /**
+     * Selects the {@param includes} paths (or everything, if there are none), except the {@param excludes} paths.
+     */
+    public static Projection of(Collection<String> includes, Collection<String> excludes) {
+        return new Projection(includes, excludes);
+    }
+
+    Node root() {
+        return root;
+    }
+
+    static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean all, excluded;
+
+        private Node walk(String path) {
+            Node node = this;
+            for (String key : path.split("\\.")) node = node.children.computeIfAbsent(key, k -> new Node());
+            return node;
+        }
+
+        private void settle(boolean inherited) {
+            this.all |= inherited;
+            for (Node child : children.values()) child.settle(all);
+        }
+
+        /**
+         * The selection beneath {@param key}, or null if the key is not selected.
+         */
+        Node select(String key) {
+            Node child = children.get(key);
+            if (child == null) child = children.get("*");
+            if (child != null) return child.excluded ? null : child;
+            return all ? ALL : null;
+        }
+
+        /**
+         * The selection for the elements of a collection or array at this path.
+         */
+        Node element() {
+            final Node child = children.get("*");
+            if (child != null && !child.excluded) return child;
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package mx.kenzie.grammar;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Everything needed to create a record of one type from its data, resolved once:
+ * the key, type and generic plan of each component, and a method handle for the canonical constructor
+ * that takes the components as an array.
+ */
+final class RecordPlan {
+
+    final String[] keys;
+    final Class<?>[] types;
+    final TypePlan[] plans;
+    final boolean[] generic;
+    final Any[] any;
+    final Object[] defaults;
+    private final Constructor<?> constructor;
+    private final MethodHandle handle;
+
+    RecordPlan(String[] keys, Class<?>[] types, TypePlan[] plans, Any[] any, Object[] defaults,
+               Constructor<?> constructor) {
+        this.keys = keys;
+        this.types = types;
+        this.plans = plans;
+        this.any = any;
+        this.defaults = defaults;
+        this.constructor = constructor;
+        this.generic = new boolean[plans.length];
+        for (int i = 0; i < plans.length; i++) generic[i] = !plans[i].simple();
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflectConstructor(constructor).asFixedArity()
+                .asSpreader(Object[].class, types.length)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException ex) {
+            handle = null; // not open to this module, so the reflective constructor is used
+        }
+        this.handle = handle;
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    Object create(Object[] parameters) {
+        try {
+            if (handle != null) return (Object) handle.invokeExact(parameters);
+            return constructor.newInstance(parameters);
+        } catch (InvocationTargetException ex) {
+            throw new GrammarException(ex.getMessage(), ex, true, false);
+        } catch (GrammarException | VirtualMachineError ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            // the handle throws what the constructor throws, which the reflective path wraps
+            throw new GrammarException(ex.getMessage(), ex, true, false);
+        }
+    }
+
+}
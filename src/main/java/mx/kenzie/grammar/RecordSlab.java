@@ -0,0 +1,154 @@
+package mx.kenzie.grammar;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A fixed-size list of records whose components are all primitives, stored off-heap in one direct buffer.
+ * Each record takes {@link #stride()} bytes, with its components packed in declaration order.
+ * Records are created when an element is read, and writing an element copies its components into the buffer,
+ * so the list holds no record objects of its own.
+ *
+ * @param <Type> The record type
+ */
+public final class RecordSlab<Type extends Record> extends AbstractList<Type> implements RandomAccess {
+
+    private final Class<Type> type;
+    private final RecordComponent[] components;
+    private final Class<?>[] types;
+    private final int[] offsets;
+    private final int stride, size;
+    private final ByteBuffer buffer;
+    private final Constructor<Type> constructor;
+
+    public RecordSlab(Class<Type> type, int size) {
+        if (!accepts(type)) throw new GrammarException(type.getSimpleName() + " is not a record of primitives.");
+        this.type = type;
+        this.components = type.getRecordComponents();
+        this.types = new Class<?>[components.length];
+        this.offsets = new int[components.length];
+        int stride = 0;
+        for (int i = 0; i < components.length; i++) {
+            this.types[i] = components[i].getType();
+            this.offsets[i] = stride;
+            stride += width(types[i]);
+        }
+        this.stride = stride;
+        this.size = size;
+        final long bytes = (long) stride * size;
+        if (size < 0 || bytes > Integer.MAX_VALUE)
+            throw new GrammarException("A slab of " + size + ' ' + type.getSimpleName() + " records is too large.");
+        this.buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+        try {
+            this.constructor = type.getDeclaredConstructor(types);
+            this.constructor.trySetAccessible();
+        } catch (NoSuchMethodException ex) {
+            throw new GrammarException("Record's canonical constructor was missing.", ex, true, false);
+        }
+    }
+
+    /**
+     * Whether {@param type} is a record with only primitive components, which can be stored in a slab.
+     */
+    public static boolean accepts(Class<?> type) {
+        if (type == null || !type.isRecord()) return false;
+        final RecordComponent[] components = type.getRecordComponents();
+        if (components.length == 0) return false;
+        for (RecordComponent component : components) if (!component.getType().isPrimitive()) return false;
+        return true;
+    }
+
+    private static int width(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    public Class<Type> type() {
+        return type;
+    }
+
+    /**
+     * @return The number of bytes each record takes
+     */
+    public int stride() {
+        return stride;
+    }
+
+    @Override
+    public Type get(int index) {
+        final Object[] parameters = new Object[components.length];
+        for (int i = 0; i < parameters.length; i++) parameters[i] = this.read(index, i);
+        try {
+            return constructor.newInstance(parameters);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new GrammarException("Unable to create '" + type.getSimpleName() + "' record.", ex, true, false);
+        }
+    }
+
+    @Override
+    public Type set(int index, Type element) {
+        final Type previous = this.get(index);
+        for (int i = 0; i < components.length; i++) {
+            try {
+                this.write(index, i, components[i].getAccessor().invoke(element));
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new GrammarException("Unable to read '" + type.getSimpleName() + "' record.", ex, true, false);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    RecordComponent[] components() {
+        return components;
+    }
+
+    /**
+     * Reads one component of a record, boxed.
+     */
+    Object read(int index, int component) {
+        final int position = this.position(index) + offsets[component];
+        final Class<?> type = types[component];
+        if (type == int.class) return buffer.getInt(position);
+        if (type == long.class) return buffer.getLong(position);
+        if (type == double.class) return buffer.getDouble(position);
+        if (type == float.class) return buffer.getFloat(position);
+        if (type == boolean.class) return buffer.get(position) != 0;
+        if (type == byte.class) return buffer.get(position);
+        if (type == short.class) return buffer.getShort(position);
+        return buffer.getChar(position);
+    }
+
+    /**
+     * Writes one component of a record, from its boxed value.
+     */
+    void write(int index, int component, Object value) {
+        final int position = this.position(index) + offsets[component];
+        final Class<?> type = types[component];
+        if (type == boolean.class) buffer.put(position, (byte) ((Boolean) value ? 1 : 0));
+        else if (type == char.class) buffer.putChar(position, (Character) value);
+        else if (type == int.class) buffer.putInt(position, ((Number) value).intValue());
+        else if (type == long.class) buffer.putLong(position, ((Number) value).longValue());
+        else if (type == double.class) buffer.putDouble(position, ((Number) value).doubleValue());
+        else if (type == float.class) buffer.putFloat(position, ((Number) value).floatValue());
+        else if (type == short.class) buffer.putShort(position, ((Number) value).shortValue());
+        else buffer.put(position, ((Number) value).byteValue());
+    }
+
+    private int position(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return index * stride;
+    }
+
+}
@@ -0,0 +1,58 @@
+package mx.kenzie.grammar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the problems found while unmarshalling in lenient mode.
+ * Each problem is recorded against the path of the key that could not be converted,
+ * and the affected field keeps its previous (or default) value.
+ * <p>
+ * Paths are tracked through recursion, so in {@link Grammar#iterative} mode they start from the nearest nested object.
+ */
+public class Report {
+
+    private final List<Problem> problems = new ArrayList<>();
+    private final List<String> path = new ArrayList<>();
+
+    public List<Problem> problems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    public boolean isEmpty() {
+        return problems.isEmpty();
+    }
+
+    void enter(String key) {
+        this.path.add(key);
+    }
+
+    void exit() {
+        this.path.remove(path.size() - 1);
+    }
+
+    void add(String message) {
+        this.problems.add(new Problem(String.join(".", path), message));
+    }
+
+    void add(Throwable problem) {
+        final String message = problem.getMessage();
+        this.add(message != null ? message : problem.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "Report" + problems;
+    }
+
+    /**
+     * A value that could not be converted.
+     *
+     * @param path    The dot-separated keys leading to the value
+     * @param message The reason the value was rejected
+     */
+    public record Problem(String path, String message) {
+    }
+
+}
@@ -0,0 +1,89 @@
+package mx.kenzie.grammar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Something that writes its data straight into the container being marshalled,
+ * and reads it back through typed accessors, rather than exchanging a map of its own.
+ */
+public interface StreamMarshalled extends Marshalled {
+
+    void serialise(Sink sink) throws GrammarException;
+
+    void deserialise(Source source) throws GrammarException;
+
+    @Override
+    default Map<String, Object> serialise() throws GrammarException {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        this.serialise(map::put);
+        return map;
+    }
+
+    @Override
+    default void deserialise(Map<String, Object> data) throws GrammarException {
+        this.deserialise(data::get);
+    }
+
+    /**
+     * Receives the marshalled data of an object.
+     */
+    @FunctionalInterface
+    interface Sink {
+
+        void write(String key, Object value);
+
+        default void write(String key, int value) {
+            this.write(key, (Object) value);
+        }
+
+        default void write(String key, long value) {
+            this.write(key, (Object) value);
+        }
+
+        default void write(String key, double value) {
+            this.write(key, (Object) value);
+        }
+
+        default void write(String key, boolean value) {
+            this.write(key, (Object) value);
+        }
+
+    }
+
+    /**
+     * Provides the marshalled data of an object.
+     * The typed accessors return the {@code alternative} if the key is missing or holds a different type.
+     */
+    @FunctionalInterface
+    interface Source {
+
+        Object read(String key);
+
+        default boolean has(String key) {
+            return this.read(key) != null;
+        }
+
+        default String readString(String key, String alternative) {
+            return this.read(key) instanceof CharSequence sequence ? sequence.toString() : alternative;
+        }
+
+        default int readInt(String key, int alternative) {
+            return this.read(key) instanceof Number number ? number.intValue() : alternative;
+        }
+
+        default long readLong(String key, long alternative) {
+            return this.read(key) instanceof Number number ? number.longValue() : alternative;
+        }
+
+        default double readDouble(String key, double alternative) {
+            return this.read(key) instanceof Number number ? number.doubleValue() : alternative;
+        }
+
+        default boolean readBoolean(String key, boolean alternative) {
+            return this.read(key) instanceof Boolean value ? value : alternative;
+        }
+
+    }
+
+}
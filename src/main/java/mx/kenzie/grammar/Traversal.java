@@ -0,0 +1,86 @@
+package mx.kenzie.grammar;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * An explicit work stack used to (un)marshal nested data without recursion.
+ * Nested containers and objects are created straight away and filled in by deferred tasks,
+ * so the thread stack does not grow with the depth of the data.
+ */
+final class Traversal {
+
+    private final Map<Class<?>, Map<Object, Object>> records = new HashMap<>();
+    private final Set<Object> unsettled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean active;
+    private int pending;
+
+    boolean active() {
+        return active;
+    }
+
+    /**
+     * Runs {@param start} and then every task it defers, until the stack is empty.
+     */
+    <Result> Result run(Supplier<Result> start) {
+        this.active = true;
+        try {
+            final Result result = start.get();
+            while (!tasks.isEmpty()) tasks.pop().run();
+            return result;
+        } finally {
+            this.active = false;
+            this.tasks.clear();
+            this.records.clear();
+            this.unsettled.clear();
+            this.pending = 0;
+        }
+    }
+
+    void defer(Runnable task) {
+        this.tasks.push(task);
+    }
+
+    /**
+     * The record of {@param type} already created from {@param data}, if there is one.
+     * The same map may be used for different types, so records are kept per type.
+     */
+    Object record(Class<?> type, Object data) {
+        final Map<Object, Object> known = records.get(type);
+        return known == null ? null : known.get(data);
+    }
+
+    /**
+     * Counts a value handed out before it is filled in, such as an object whose fields are set by a deferred task.
+     * A record created while this count changes may not yet be equal to its final value.
+     */
+    void pend() {
+        this.pending++;
+    }
+
+    int pending() {
+        return pending;
+    }
+
+    /**
+     * Marks {@param record} as holding a value that is not filled in yet, so it must not be shared by equality.
+     */
+    void unsettle(Object record) {
+        this.unsettled.add(record);
+    }
+
+    boolean settled(Object record) {
+        return !unsettled.contains(record);
+    }
+
+    void record(Class<?> type, Object data, Object record) {
+        this.records.computeIfAbsent(type, key -> new IdentityHashMap<>()).put(data, record);
+    }
+
+}
@@ -0,0 +1,136 @@
+package mx.kenzie.grammar;
+
+import java.lang.reflect.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A resolved generic type, describing how marshalled data is converted back into it.
+ * Collections and arrays hold a plan for their elements; maps hold a plan for their keys and values.
+ * Plans are resolved once per field (in the context of the class that holds it) and cached.
+ *
+ * @param type    The raw type
+ * @param key     The plan for map keys, or null
+ * @param element The plan for collection/array elements or map values, or null
+ */
+record TypePlan(Class<?> type, TypePlan key, TypePlan element) {
+
+    static final TypePlan OBJECT = new TypePlan(Object.class, null, null);
+
+    private static final ClassValue<Map<Object, TypePlan>> plans = new ClassValue<>() {
+        @Override
+        protected Map<Object, TypePlan> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * The plan for {@param field}, with type variables bound by {@param context} (the class of the field's owner).
+     */
+    static TypePlan of(Field field, Class<?> context) {
+        final TypePlan known = plans.get(context).get(field);
+        if (known != null) return known;
+        final TypePlan plan = of(field.getGenericType(), bindings(context, field.getDeclaringClass()));
+        plans.get(context).put(field, plan);
+        return plan;
+    }
+
+    static TypePlan of(RecordComponent component) {
+        final Map<Object, TypePlan> cache = plans.get(component.getDeclaringRecord());
+        final TypePlan known = cache.get(component.getName());
+        if (known != null) return known;
+        final TypePlan plan = of(component.getGenericType(), Map.of());
+        cache.put(component.getName(), plan);
+        return plan;
+    }
+
+    static TypePlan of(Type type, Map<TypeVariable<?>, Type> bindings) {
+        return of(type, bindings, null);
+    }
+
+    /**
+     * Resolves {@param type}, where {@param resolving} holds the type variables whose bounds are being resolved,
+     * so a variable bounded by itself (e.g. {@code T extends List<T>}) falls back to its erasure.
+     */
+    private static TypePlan of(Type type, Map<TypeVariable<?>, Type> bindings, Set<TypeVariable<?>> resolving) {
+        //<editor-fold desc="Resolves a generic type into a plan." defaultstate="collapsed">
+        if (type instanceof Class<?> simple) {
+            if (simple.isArray() && !simple.getComponentType().isPrimitive())
+                return new TypePlan(simple, null, of(simple.getComponentType(), bindings, resolving));
+            return new TypePlan(simple, null, null);
+        } else if (type instanceof ParameterizedType parameterized) {
+            final Class<?> raw = (Class<?>) parameterized.getRawType();
+            final Type[] arguments = parameterized.getActualTypeArguments();
+            if (Map.class.isAssignableFrom(raw) && arguments.length == 2)
+                return new TypePlan(raw, of(arguments[0], bindings, resolving), of(arguments[1], bindings, resolving));
+            if (Collection.class.isAssignableFrom(raw) && arguments.length == 1)
+                return new TypePlan(raw, null, of(arguments[0], bindings, resolving));
+            return new TypePlan(raw, null, null);
+        } else if (type instanceof GenericArrayType array) {
+            final TypePlan element = of(array.getGenericComponentType(), bindings, resolving);
+            return new TypePlan(element.type().arrayType(), null, element);
+        } else if (type instanceof WildcardType wildcard) {
+            if (wildcard.getLowerBounds().length > 0) return of(wildcard.getLowerBounds()[0], bindings, resolving);
+            return of(wildcard.getUpperBounds()[0], bindings, resolving);
+        } else if (type instanceof TypeVariable<?> variable) {
+            if (resolving == null) resolving = new HashSet<>();
+            else if (resolving.contains(variable)) return new TypePlan(erasure(variable), null, null);
+            final Type bound = bindings.get(variable);
+            resolving.add(variable);
+            try {
+                return of(bound != null ? bound : variable.getBounds()[0], bindings, resolving);
+            } finally {
+                resolving.remove(variable);
+            }
+        }
+        return OBJECT;
+        //</editor-fold>
+    }
+
+    private static Class<?> erasure(Type type) {
+        if (type instanceof Class<?> simple) return simple;
+        if (type instanceof ParameterizedType parameterized) return (Class<?>) parameterized.getRawType();
+        if (type instanceof GenericArrayType array) return erasure(array.getGenericComponentType()).arrayType();
+        if (type instanceof TypeVariable<?> variable) return erasure(variable.getBounds()[0]);
+        return Object.class;
+    }
+
+    /**
+     * Finds the types bound to the type variables of {@param declaring} by its subclass {@param context}.
+     */
+    private static Map<TypeVariable<?>, Type> bindings(Class<?> context, Class<?> declaring) {
+        if (context == declaring) return Map.of();
+        final Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+        Class<?> type = context;
+        while (type != null && type != declaring) {
+            final Type parent = type.getGenericSuperclass();
+            if (parent instanceof ParameterizedType parameterized) {
+                final Class<?> raw = (Class<?>) parameterized.getRawType();
+                final TypeVariable<?>[] variables = raw.getTypeParameters();
+                final Type[] arguments = parameterized.getActualTypeArguments();
+                for (int i = 0; i < variables.length; i++) {
+                    final Type argument = arguments[i];
+                    if (argument instanceof TypeVariable<?> variable && bindings.containsKey(variable))
+                        bindings.put(variables[i], bindings.get(variable));
+                    else bindings.put(variables[i], argument);
+                }
+            }
+            type = type.getSuperclass();
+        }
+        return bindings;
+    }
+
+    /**
+     * Whether data can be converted using only the raw type.
+     */
+    boolean simple() {
+        if (type.isArray()) return element == null || element.simple();
+        if (key != null && key.type != Object.class && key.type != String.class) return false;
+        return element == null || element.type == Object.class;
+    }
+
+}
@@ -0,0 +1,162 @@
+package mx.kenzie.grammar;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AllocationTest {
+
+    private static final int WARMUP = 20_000, RUNS = 10_000;
+    private static com.sun.management.ThreadMXBean bean;
+
+    @BeforeClass
+    public static void startup() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean.isThreadAllocatedMemorySupported());
+        bean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static long bytesPerRun(Runnable runnable) {
+        for (int i = 0; i < WARMUP; i++) runnable.run();
+        final long thread = Thread.currentThread().getId();
+        final long start = bean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < RUNS; i++) runnable.run();
+        return (bean.getThreadAllocatedBytes(thread) - start) / RUNS;
+    }
+
+    private static Map<String, Object> data() {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("number", 1000);
+        map.put("big", 5000L);
+        map.put("decimal", 2.5);
+        map.put("flag", true);
+        map.put("name", "hello");
+        return map;
+    }
+
+    @Test
+    public void testUnmarshalIntoExisting() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> data = data();
+        final Flat flat = new Flat();
+        final long bytes = bytesPerRun(() -> grammar.unmarshal(flat, data));
+        assert flat.number == 1000 && flat.name.equals("hello");
+        assert bytes < 32 : bytes + " bytes per unmarshal";
+    }
+
+    @Test
+    public void testUnmarshalNew() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> data = data();
+        final long bytes = bytesPerRun(() -> grammar.unmarshal(Flat.class, data));
+        assert bytes <= 64 : bytes + " bytes per unmarshal";
+    }
+
+    @Test
+    public void testUnmarshalArray() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> data = Map.of("numbers", List.of(1000, 2000, 3000, 4000));
+        final long bytes = bytesPerRun(() -> grammar.unmarshal(Numbers.class, data));
+        // the object, its array and the list iterator
+        assert bytes <= 112 : bytes + " bytes per unmarshal";
+    }
+
+    @Test
+    public void testMarshal() {
+        final Grammar grammar = new Grammar();
+        final Flat flat = grammar.unmarshal(Flat.class, data());
+        final long output = bytesPerRun(AllocationTest::data);
+        final long bytes = bytesPerRun(() -> grammar.marshal(flat));
+        assert bytes <= output + 16 : bytes + " bytes per marshal, " + output + " for the map";
+    }
+
+    @Test
+    public void testRecord() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> data = Map.of("x", 1000, "y", 2000);
+        final long bytes = bytesPerRun(() -> grammar.unmarshal(Point.class, data));
+        // the record and its constructor arguments
+        assert bytes <= 64 : bytes + " bytes per unmarshal";
+    }
+
+    @Test
+    public void testAny() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> data = Map.of("shape", Map.of("x", 1000, "y", 2000));
+        final long bytes = bytesPerRun(() -> grammar.unmarshal(Holder.class, data));
+        // the objects, and the key views used to score each option
+        assert bytes <= 400 : bytes + " bytes per unmarshal";
+    }
+
+    @Test
+    public void testStreamed() {
+        final Grammar grammar = new Grammar();
+        final Streamed streamed = new Streamed();
+        streamed.number = 1000;
+        streamed.name = "hello";
+        final long output = bytesPerRun(() -> {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("number", 1000);
+            map.put("name", "hello");
+        });
+        final long bytes = bytesPerRun(() -> grammar.marshal(streamed));
+        assert bytes <= output + 16 : bytes + " bytes per marshal, " + output + " for the map";
+        final Map<String, Object> data = grammar.marshal(streamed);
+        final Streamed target = new Streamed();
+        final long read = bytesPerRun(() -> grammar.unmarshal(target, data));
+        assert target.number == 1000 && target.name.equals("hello");
+        assert read < 32 : read + " bytes per unmarshal";
+        // the sink and source are reused, rather than relying on the JIT to remove a new adapter for each call
+        final Object sink = streamed.sink, source = target.source;
+        grammar.marshal(streamed);
+        grammar.unmarshal(target, data);
+        assert streamed.sink == sink && target.source == source;
+    }
+
+    public static class Streamed implements StreamMarshalled {
+        public int number;
+        public String name;
+        private Sink sink;
+        private Source source;
+
+        @Override
+        public void serialise(Sink sink) {
+            this.sink = sink;
+            sink.write("number", number);
+            sink.write("name", name);
+        }
+
+        @Override
+        public void deserialise(Source source) {
+            this.source = source;
+            this.number = source.readInt("number", number);
+            this.name = source.readString("name", name);
+        }
+    }
+
+    public static class Flat {
+        public int number;
+        public long big;
+        public double decimal;
+        public boolean flag;
+        public String name;
+    }
+
+    public static class Numbers {
+        public int[] numbers;
+    }
+
+    public static class Holder {
+        @Any({Flat.class, Point.class}) public Object shape;
+    }
+
+    public record Point(int x, int y) {
+    }
+
+}
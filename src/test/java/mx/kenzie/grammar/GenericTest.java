@@ -4,8 +4,11 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 public class GenericTest {
 
@@ -112,6 +115,133 @@ public class GenericTest {
         assert thing.array[1].number == 3;
     }
 
+    @Test
+    public void testEnumOrdinals() {
+        class Thing {
+            Blob blob = Blob.BAR;
+            Blob[] blobs = {Blob.FOO, Blob.BAR};
+        }
+        final Grammar grammar = new Grammar();
+        grammar.enumOrdinals = true;
+        final Map<String, Object> map = grammar.marshal(new Thing());
+        assert map.get("blob").equals(1) : map;
+        assert map.get("blobs").equals(List.of(0, 1)) : map;
+        final Thing thing = grammar.unmarshal(Thing.class, Map.of("blob", 0, "blobs", List.of("BAR", 0)));
+        assert thing.blob == Blob.FOO;
+        assert thing.blobs[0] == Blob.BAR;
+        assert thing.blobs[1] == Blob.FOO;
+    }
+
+    @Test
+    public void testMemoisedRecord() {
+        record Foo(int number, List<String> words) {
+        }
+        record Bar(Foo foo) {
+        }
+        final Grammar grammar = new Grammar();
+        grammar.memoise(16);
+        final Foo foo = new Foo(3, List.of("a", "b"));
+        final Map<String, Object> first = grammar.marshal(foo), second = grammar.marshal(foo);
+        assert first == second;
+        assert first.get("words").equals(List.of("a", "b"));
+        try {
+            first.put("number", 4);
+            assert false : "Memoised data was modifiable.";
+        } catch (UnsupportedOperationException ignored) {
+        }
+        final Map<String, Object> bar = grammar.marshal(new Bar(foo));
+        assert bar.get("foo") == first;
+        assert !grammar.marshal(new Foo(3, List.of())).equals(first);
+    }
+
+    @Test
+    public void testCanonicalValues() {
+        record Currency(String code) {
+        }
+        record Row(Currency currency, UUID id, String label) {
+        }
+        record Table(Row[] rows) {
+        }
+        final Grammar grammar = new Grammar();
+        grammar.canonicalise(1024, String.class);
+        // fixed data, so no two of the interned values share a slot in the table
+        final String id = "6f1c2b9e-3d4a-4c5b-8e7f-0a1b2c3d4e5f";
+        final Map<String, Object> row = Map.of("currency", Map.of("code", "EUR"), "id", id,
+            "label", new StringBuilder("label"));
+        final Table table = grammar.unmarshal(Table.class, Map.of("rows", List.of(row, new HashMap<>(row))));
+        assert table.rows[0] == table.rows[1];
+        assert table.rows[0].currency == grammar.unmarshal(Currency.class, Map.of("code", "EUR"));
+        final Grammar plain = new Grammar();
+        final Table other = plain.unmarshal(Table.class, Map.of("rows", List.of(row, new HashMap<>(row))));
+        assert other.rows[0] != other.rows[1];
+        assert other.rows[0].equals(other.rows[1]);
+    }
+
+    @Test
+    public void testNestedGenerics() {
+        record Foo(int number) {
+        }
+        class Thing {
+            List<List<Foo>> lists;
+            Map<String, Foo> map;
+            Map<Integer, Blob> keyed;
+            Set<? extends Foo> set;
+        }
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> map = Map.of(
+            "lists", List.of(List.of(Map.of("number", 1)), List.of(Map.of("number", 2), Map.of("number", 3))),
+            "map", Map.of("a", Map.of("number", 4)),
+            "keyed", Map.of("5", "FOO"),
+            "set", List.of(Map.of("number", 6)));
+        final Thing thing = grammar.unmarshal(Thing.class, map);
+        assert thing.lists.size() == 2;
+        assert thing.lists.get(1).get(1).equals(new Foo(3)) : thing.lists;
+        assert thing.map.get("a").equals(new Foo(4)) : thing.map;
+        assert thing.keyed.get(5) == Blob.FOO : thing.keyed;
+        assert thing.set.contains(new Foo(6)) : thing.set;
+    }
+
+    @Test
+    public void testBoundTypeVariable() {
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> map = Map.of("items", List.of(Map.of("name", "a")), "value", Map.of("name", "b"));
+        final NamedBox box = grammar.unmarshal(NamedBox.class, map);
+        final Object first = box.items.get(0);
+        assert first instanceof Named named && named.name.equals("a") : box.items;
+        final Object value = box.value;
+        assert value instanceof Named named && named.name.equals("b") : value;
+        record Holder(List<Named> names, Map<String, List<Named>> groups) {
+        }
+        final Holder holder = grammar.unmarshal(Holder.class, Map.of("names", List.of(Map.of("name", "c")),
+            "groups", Map.of("x", List.of(Map.of("name", "d")))));
+        assert holder.names.get(0).name.equals("c");
+        assert holder.groups.get("x").get(0).name.equals("d");
+    }
+
+    @Test
+    public void testRecursiveTypeVariable() {
+        final Grammar grammar = new Grammar();
+        final Recursive<?> recursive = grammar.unmarshal(Recursive.class, Map.of("value", List.of(List.of())));
+        final List<?> value = recursive.value;
+        assert value.size() == 1 && value.get(0) instanceof List<?> : value;
+    }
+
+    public static class Box<T> {
+        public List<T> items;
+        public T value;
+    }
+
+    public static class Recursive<T extends List<T>> {
+        public T value;
+    }
+
+    public static class NamedBox extends Box<Named> {
+    }
+
+    public static class Named {
+        public String name;
+    }
+
     public enum Blob {
         FOO, BAR
     }
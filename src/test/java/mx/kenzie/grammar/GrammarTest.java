@@ -4,10 +4,13 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class GrammarTest {
 
@@ -212,4 +215,460 @@ public class GrammarTest {
 
     }
 
+    @Test
+    public void testLimits() {
+        class Node {
+            Node next;
+            String name;
+            int[] numbers;
+        }
+        final Grammar grammar = new Grammar();
+        grammar.limits = new Limits(3, 4, 0, 8);
+        final Map<String, Object> deep = Map.of("next", Map.of("next", Map.of("next", Map.of())));
+        final Map<String, Object> shallow = Map.of("next", Map.of("next", Map.of()));
+        assert grammar.unmarshal(Node.class, shallow).next.next != null;
+        try {
+            grammar.unmarshal(Node.class, deep);
+            assert false : "Depth limit was not applied.";
+        } catch (LimitException ignored) {
+        }
+        try {
+            grammar.unmarshal(Node.class, Map.of("numbers", List.of(1, 2, 3, 4, 5)));
+            assert false : "Element limit was not applied.";
+        } catch (LimitException ignored) {
+        }
+        try {
+            grammar.unmarshal(Node.class, Map.of("name", "too long for this"));
+            assert false : "Length limit was not applied.";
+        } catch (LimitException ignored) {
+        }
+        assert grammar.unmarshal(Node.class, shallow).next.next != null;
+        grammar.limits = new Limits(0, 0, 2, 0);
+        try {
+            grammar.unmarshal(Node.class, shallow);
+            assert false : "Object limit was not applied.";
+        } catch (LimitException ignored) {
+        }
+    }
+
+    @Test
+    public void testLenient() {
+        record Point(int x, int y) {
+        }
+        class Child {
+            int number = 3;
+            GenericTest.Blob blob;
+        }
+        class Thing {
+            int number = 5;
+            String word = "hello";
+            Child child;
+            Point point;
+        }
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> map = Map.of("number", "six", "word", 7, "child",
+            Map.of("number", 4, "blob", "BAZ"), "point", Map.of("x", 1, "y", "two"));
+        final Report report = new Report();
+        final Thing thing = grammar.unmarshal(new Thing(), map, report);
+        assert thing.number == 5;
+        assert thing.word.equals("hello");
+        assert thing.child.number == 4;
+        assert thing.child.blob == null;
+        assert thing.point.x == 1 && thing.point.y == 0;
+        assert report.problems().size() == 4 : report;
+        assert report.problems().stream().anyMatch(problem -> problem.path().equals("child.blob")) : report;
+        assert report.problems().stream().anyMatch(problem -> problem.path().equals("point.y")) : report;
+        try {
+            grammar.unmarshal(new Thing(), map);
+            assert false : "Strict mode accepted bad data.";
+        } catch (GrammarException ex) {
+            assert ex.getStackTrace().length == 0;
+            assert ex.getCause() != null;
+        }
+    }
+
+    @Test
+    public void testProjection() {
+        class Address {
+            String city = "Paris", street = "Rue";
+        }
+        class Owner {
+            String name = "Bob";
+            Address address = new Address();
+        }
+        class Item {
+            String name = "pen";
+            int price = 3;
+        }
+        class Thing {
+            Owner owner = new Owner();
+            List<Item> items = List.of(new Item(), new Item());
+            int number = 4;
+        }
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> map = grammar.marshal(new Thing(), Projection.include("owner.address.city", "items.*.name"));
+        assert map.keySet().equals(Set.of("owner", "items")) : map;
+        assert map.get("owner").equals(Map.of("address", Map.of("city", "Paris"))) : map;
+        assert map.get("items").equals(List.of(Map.of("name", "pen"), Map.of("name", "pen"))) : map;
+        final Map<String, Object> excluded = grammar.marshal(new Thing(), Projection.exclude("owner.address", "items.price"));
+        assert excluded.get("owner").equals(Map.of("name", "Bob")) : excluded;
+        assert excluded.get("items").equals(List.of(Map.of("name", "pen"), Map.of("name", "pen"))) : excluded;
+        assert excluded.get("number").equals(4);
+        final Map<String, Object> data = Map.of("number", 9, "owner", Map.of("name", "Al", "address", Map.of("city", "Rome")));
+        final Thing thing = new Thing();
+        thing.owner = null;
+        grammar.unmarshal(thing, data, Projection.include("number", "owner.name"));
+        assert thing.number == 9;
+        assert thing.owner != null && thing.owner.name.equals("Al");
+        assert thing.owner.address == null;
+    }
+
+    @Test
+    public void testFieldDispatch() {
+        class Thing {
+            int a, b, c, d, e, f, g, h;
+            @Name("eye") String i;
+            Map<String, Object> __data;
+        }
+        final Grammar grammar = new Grammar();
+        final Thing thing = new Thing();
+        thing.a = 1;
+        thing.h = 8;
+        grammar.unmarshal(thing, Map.of("b", 2, "eye", "i", "unknown", true));
+        assert thing.a == 1 && thing.b == 2 && thing.h == 8;
+        assert thing.i.equals("i");
+        assert thing.__data.get("unknown").equals(true);
+        final Map<String, Object> dense = new LinkedHashMap<>();
+        for (String key : List.of("a", "b", "c", "d", "e", "f", "g", "h")) dense.put(key, (int) key.charAt(0));
+        grammar.unmarshal(thing, dense);
+        assert thing.a == 'a' && thing.h == 'h';
+        final String[] keys = new String[100];
+        for (int i = 0; i < keys.length; i++) keys[i] = "key" + i;
+        final FieldTable table = new FieldTable(new Field[keys.length], keys, new boolean[keys.length], null);
+        for (int i = 0; i < keys.length; i++) assert table.indexOf("key" + i) == i;
+        assert table.indexOf("key100") == -1;
+        assert table.indexOf(5) == -1;
+    }
+
+    @Test
+    public void testDiscriminator() {
+        class Shape {
+        }
+        class Circle extends Shape {
+            int size = 1;
+        }
+        class Square extends Shape {
+            int size = 2;
+        }
+        class Drawing {
+            @Any({Circle.class, Square.class}) Shape first = new Square();
+            @Any({Circle.class, Square.class}) List<Shape> shapes = List.of(new Circle(), new Square());
+        }
+        final Grammar grammar = new Grammar();
+        grammar.discriminator = "__type";
+        grammar.alias("square", Square.class);
+        final Map<String, Object> map = grammar.marshal(new Drawing());
+        assert map.get("first") instanceof Map<?, ?> first && first.get("__type").equals("square") : map;
+        assert map.get("shapes") instanceof List<?> list && list.get(0) instanceof Map<?, ?> circle
+            && circle.get("__type").equals(Circle.class.getName()) : map;
+        final Drawing drawing = grammar.unmarshal(Drawing.class, map);
+        assert drawing.first instanceof Square;
+        assert drawing.shapes.get(0) instanceof Circle;
+        assert drawing.shapes.get(1) instanceof Square;
+        final Drawing untagged = grammar.unmarshal(Drawing.class, Map.of("first", Map.of("size", 3)));
+        assert untagged.first != null;
+        final Map<String, Object> forged = Map.of("first", Map.of("__type", GrammarTest.class.getName()));
+        assert grammar.unmarshal(Drawing.class, forged).first != null;
+    }
+
+    @Test
+    public void testCopy() {
+        record Point(int x, int y) {
+        }
+        class Shape {
+            String name = "square";
+            int[] sizes = {1, 2};
+            List<Point> points = new java.util.ArrayList<>(List.of(new Point(0, 0), new Point(1, 1)));
+            Map<String, Point> labels = new LinkedHashMap<>(Map.of("centre", new Point(2, 3)));
+        }
+        class View {
+            @Name("name") String title;
+            long[] sizes;
+            Point[] points;
+            Map<String, Object> labels;
+        }
+        final Grammar grammar = new Grammar();
+        final Shape shape = new Shape();
+        final Shape copy = grammar.copy(shape);
+        assert copy != shape && copy.name.equals("square");
+        assert copy.sizes != shape.sizes && copy.sizes[1] == 2;
+        assert copy.points != shape.points && copy.points.equals(shape.points);
+        assert copy.labels != shape.labels && copy.labels.equals(shape.labels);
+        final View view = grammar.convert(shape, View.class);
+        assert view.title.equals("square");
+        assert view.sizes.length == 2 && view.sizes[0] == 1L;
+        assert view.points[1].equals(new Point(1, 1));
+        assert view.labels.get("centre") instanceof Point point && point.y == 3 : view.labels;
+        assert grammar.convert(Map.of(), View.class) != null;
+    }
+
+    @Test
+    public void testConvertMapsToObjects() {
+        record Street(String name) {
+        }
+        class Source {
+            Map<String, Object> address = Map.of("city", "Paris", "street", Map.of("name", "Rue"));
+            List<Map<String, Object>> others = List.of(Map.of("city", "Lyon"));
+            List<String> tags = List.of("a");
+        }
+        class Address {
+            String city;
+            Street street;
+        }
+        class Target {
+            Address address;
+            List<Address> others;
+        }
+        class Mismatch {
+            Address tags;
+        }
+        final Grammar grammar = new Grammar();
+        final Target target = grammar.convert(new Source(), Target.class);
+        assert target.address.city.equals("Paris") && target.address.street.equals(new Street("Rue"));
+        final Object other = target.others.get(0);
+        assert other instanceof Address address && address.city.equals("Lyon") : target.others;
+        try {
+            grammar.convert(new Source(), Mismatch.class);
+            assert false;
+        } catch (GrammarException expected) {
+        }
+    }
+
+    @Test
+    public void testFingerprint() {
+        record Point(int x, int y) {
+        }
+        class Shape {
+            public String name = "square";
+            int[] sizes = {1, 2};
+            List<Point> points = List.of(new Point(0, 0), new Point(1, 1));
+            Map<String, Object> extra = new LinkedHashMap<>(Map.of("a", 1, "b", 2L));
+        }
+        final Grammar grammar = new Grammar();
+        assert List.copyOf(grammar.marshal(new Shape()).keySet()).equals(List.of("name", "sizes", "points", "extra"));
+        final Shape first = new Shape(), second = new Shape();
+        assert grammar.fingerprint(first).equals(grammar.fingerprint(second));
+        assert grammar.fingerprint(first).equals(grammar.fingerprint(grammar.marshal(first)));
+        assert grammar.equivalent(first, second);
+        assert grammar.equivalent(first, grammar.marshal(second));
+        second.extra = new LinkedHashMap<>(Map.of("b", 2L, "a", 1));
+        assert grammar.fingerprint(first).equals(grammar.fingerprint(second));
+        assert grammar.equivalent(first, second);
+        second.sizes[1] = 3;
+        assert !grammar.fingerprint(first).equals(grammar.fingerprint(second));
+        assert !grammar.equivalent(first, second);
+        second.sizes[1] = 2;
+        second.extra.put("a", 1L);
+        assert !grammar.fingerprint(first).equals(grammar.fingerprint(second));
+        assert !grammar.equivalent(first, second);
+        assert grammar.fingerprint(new Point(1, 2)).asLong() != grammar.fingerprint(new Point(2, 1)).asLong();
+    }
+
+    @Test
+    public void testStableNumberFingerprint() {
+        final Grammar grammar = new Grammar();
+        final Hasher hasher = new Hasher();
+        hasher.put(Hasher.NUMBER);
+        hasher.put("java.math.BigDecimal");
+        hasher.put("1.5");
+        assert grammar.fingerprint(new BigDecimal("1.5")).equals(hasher.finish());
+        assert !grammar.fingerprint(new BigDecimal("1")).equals(grammar.fingerprint(BigInteger.ONE));
+    }
+
+    @Test
+    public void testEstimate() {
+        record Point(int x, int y) {
+        }
+        class Shape {
+            String name = "carré";
+            int[] sizes = {1, 2, 3};
+            List<Point> points = List.of(new Point(0, 0), new Point(1, 1));
+            @Optional String missing;
+        }
+        final Estimate estimate = new Grammar().estimate(new Shape());
+        assert estimate.objects() == 3 : estimate;
+        assert estimate.fields() == 7 : estimate;
+        assert estimate.elements() == 5 : estimate;
+        final int keys = "name".length() + "sizes".length() + "points".length() + 2 * "xy".length();
+        assert estimate.stringBytes() == keys + "carré".getBytes(java.nio.charset.StandardCharsets.UTF_8).length : estimate;
+    }
+
+    @Test
+    public void testRecycle() {
+        class Point {
+            int x, y;
+        }
+        class Scene {
+            int[] sizes = new int[2];
+            Point[] corners = {new Point(), new Point()};
+            List<Point> points = new java.util.ArrayList<>(List.of(new Point(), new Point(), new Point()));
+            Point centre;
+        }
+        final Point spare = new Point();
+        final Grammar grammar = new Grammar();
+        grammar.recycle = true;
+        grammar.pool = type -> type == Point.class ? spare : null;
+        final Scene scene = new Scene();
+        final int[] sizes = scene.sizes;
+        final Point corner = scene.corners[1], first = scene.points.get(0);
+        final List<Point> points = scene.points;
+        grammar.unmarshal(scene, Map.of("sizes", List.of(4, 5), "corners", List.of(Map.of(), Map.of("x", 3)),
+            "points", List.of(Map.of("y", 6), Map.of()), "centre", Map.of("x", 7)));
+        assert scene.sizes == sizes && sizes[1] == 5;
+        assert scene.corners[1] == corner && corner.x == 3;
+        assert scene.points == points && points.size() == 2 && points.get(0) == first && first.y == 6;
+        assert scene.centre == spare && spare.x == 7;
+        grammar.unmarshal(scene, Map.of("sizes", List.of(1, 2, 3)));
+        assert scene.sizes != sizes && scene.sizes.length == 3;
+    }
+
+    @Test
+    public void testOmitDefaults() {
+        record Point(int x, int y, List<String> tags) {
+        }
+        @OmitDefaults
+        class Sparse {
+            int count;
+            boolean flag;
+            String name;
+            int[] sizes = new int[0];
+            List<Point> points = new java.util.ArrayList<>();
+            Integer boxed = 0;
+            List<String> notes;
+        }
+        final Grammar grammar = new Grammar();
+        final Sparse sparse = new Sparse();
+        sparse.points.add(new Point(0, 4, List.of()));
+        final Map<String, Object> map = grammar.marshal(sparse);
+        // a local class is created without running its initialisers, so only null arrays are left out
+        assert map.keySet().equals(Set.of("sizes", "points", "boxed")) : map;
+        assert map.get("points") instanceof List<?> list && list.get(0) instanceof Map<?, ?> point
+            && point.size() == 3 : map;
+        final Sparse result = grammar.unmarshal(Sparse.class, map);
+        assert result.count == 0 && result.name == null && result.sizes.length == 0 && result.boxed == 0;
+        assert grammar.fingerprint(sparse).equals(grammar.fingerprint(map));
+        grammar.omitDefaults = true;
+        final Map<String, Object> omitted = grammar.marshal(sparse);
+        assert omitted.get("points") instanceof List<?> list && list.get(0) instanceof Map<?, ?> point
+            && point.keySet().equals(Set.of("y")) : omitted;
+        final Point point = grammar.unmarshal(Point.class, Map.of("y", 4));
+        assert point.equals(new Point(0, 4, List.of())) : point;
+        final Sparse noted = new Sparse();
+        noted.notes = new java.util.ArrayList<>();
+        assert grammar.marshal(noted).containsKey("notes");
+        assert grammar.unmarshal(Sparse.class, grammar.marshal(new Sparse())).notes == null;
+        final Sparse existing = new Sparse();
+        existing.count = 5;
+        existing.name = "old";
+        existing.sizes = new int[]{1};
+        grammar.unmarshal(existing, Map.of("flag", true));
+        assert existing.flag && existing.count == 5 && existing.name.equals("old") && existing.sizes.length == 1;
+        grammar.replaceOmitted = true;
+        grammar.unmarshal(existing, Map.of(), Projection.include("count"));
+        assert existing.count == 0 && existing.name.equals("old") && existing.sizes.length == 1;
+        grammar.unmarshal(existing, grammar.marshal(new Sparse()));
+        assert existing.count == 0 && existing.name == null && existing.sizes.length == 0 && existing.notes == null;
+    }
+
+    @Test
+    public void testSlab() {
+        record Sample(long time, double value, boolean valid) {
+        }
+        record Series(String name, List<Sample> samples) {
+        }
+        final Grammar grammar = new Grammar();
+        grammar.slabThreshold = 2;
+        final List<Map<String, Object>> data = new java.util.ArrayList<>();
+        for (int i = 0; i < 10; i++) data.add(Map.of("time", (long) i, "value", i * 0.5, "valid", i % 2 == 0));
+        final Series series = grammar.unmarshal(Series.class, Map.of("name", "test", "samples", data));
+        assert series.samples instanceof RecordSlab<?> slab && slab.stride() == 17;
+        assert series.samples.size() == 10;
+        assert series.samples.get(3).equals(new Sample(3, 1.5, false));
+        series.samples.set(3, new Sample(30, 2.5, true));
+        assert series.samples.get(3).equals(new Sample(30, 2.5, true));
+        final Map<String, Object> map = grammar.marshal(series);
+        assert map.get("samples") instanceof List<?> list && list.get(4).equals(data.get(4)) : map;
+        final Series single = grammar.unmarshal(Series.class, Map.of("name", "test", "samples", data.subList(0, 1)));
+        assert !(single.samples instanceof RecordSlab<?>);
+        class Log {
+            List<Sample> samples;
+        }
+        final Log log = grammar.unmarshal(new Log(), Map.of("samples", data));
+        assert log.samples instanceof RecordSlab<?>;
+        grammar.unmarshal(log, Map.of("samples", data.subList(0, 1)));
+        assert !(log.samples instanceof RecordSlab<?>) && log.samples.size() == 1;
+        grammar.unmarshal(log, Map.of("samples", data));
+        grammar.recycle = true;
+        grammar.unmarshal(log, Map.of("samples", data.subList(0, 1)));
+        assert log.samples.get(0).equals(new Sample(0, 0, true));
+    }
+
+    @Test
+    public void testUnknownData() {
+        class Thing {
+            int a;
+            @Name("bee") String b;
+            Map<String, Object> __data;
+        }
+        final Grammar grammar = new Grammar();
+        grammar.unknownData = true;
+        final Thing thing = grammar.unmarshal(Thing.class, Map.of("a", 1, "bee", "b", "c", 3, "d", List.of()));
+        assert thing.a == 1 && thing.b.equals("b");
+        assert thing.__data.equals(Map.of("c", 3, "d", List.of())) : thing.__data;
+        final Thing known = grammar.unmarshal(Thing.class, Map.of("a", 2));
+        assert known.__data == null;
+        grammar.unknownData = false;
+        assert grammar.unmarshal(Thing.class, Map.of("a", 2)).__data.equals(Map.of("a", 2));
+    }
+
+    @Test
+    public void testStacklessRejection() {
+        class Thing {
+            GenericTest.Blob blob;
+            java.util.UUID id;
+            Map<Integer, String> names;
+        }
+        final Grammar grammar = new Grammar();
+        final java.util.UUID id = java.util.UUID.randomUUID();
+        assert grammar.unmarshal(Thing.class, Map.of("id", id.toString())).id.equals(id);
+        final Report report = new Report();
+        grammar.unmarshal(new Thing(), Map.of("blob", "BAZ", "id", "not-a-uuid", "names", Map.of("x", "y")), report);
+        assert report.problems().size() == 3 : report;
+        for (String key : List.of("blob", "id", "names")) {
+            try {
+                grammar.unmarshal(Thing.class, Map.of(key, key.equals("names") ? Map.of("x", "y") : "bad"));
+                assert false : key;
+            } catch (GrammarException ex) {
+                assert ex.getCause().getStackTrace().length == 0 : key;
+            }
+        }
+    }
+
+    @Test
+    public void testRecordConstructorFailure() {
+        record Positive(int value) {
+            Positive {
+                if (value < 0) throw new IllegalArgumentException("neg");
+            }
+        }
+        final Grammar grammar = new Grammar();
+        assert grammar.unmarshal(Positive.class, Map.of("value", 1)).value() == 1;
+        try {
+            grammar.unmarshal(Positive.class, Map.of("value", -1));
+            assert false;
+        } catch (GrammarException ex) {
+            assert ex.getCause() instanceof IllegalArgumentException cause && cause.getMessage().equals("neg") : ex;
+        }
+    }
+
 }
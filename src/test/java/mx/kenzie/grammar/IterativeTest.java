@@ -0,0 +1,170 @@
+package mx.kenzie.grammar;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class IterativeTest {
+
+    private static final int DEPTH = 20_000;
+
+    private static void runSmall(Runnable runnable) throws Throwable {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                runnable.run();
+            } catch (Throwable ex) {
+                error.set(ex);
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (error.get() != null) throw error.get();
+    }
+
+    @Test
+    public void testDeepObjects() throws Throwable {
+        runSmall(() -> {
+            final Grammar grammar = new Grammar();
+            grammar.iterative = true;
+            final Node head = new Node();
+            Node node = head;
+            for (int i = 1; i < DEPTH; i++) {
+                node.next = new Node();
+                node.next.value = i;
+                node.children = List.of(new Node());
+                node = node.next;
+            }
+            final Map<String, Object> map = grammar.marshal(head);
+            final Node result = grammar.unmarshal(Node.class, map);
+            Node current = result;
+            for (int i = 0; i < DEPTH; i++) {
+                assert current.value == i;
+                current = current.next;
+            }
+            assert current == null;
+            assert result.children.get(0) != null;
+        });
+    }
+
+    @Test
+    public void testDeepRecords() throws Throwable {
+        runSmall(() -> {
+            final Grammar grammar = new Grammar();
+            grammar.iterative = true;
+            Map<String, Object> data = null;
+            for (int i = DEPTH - 1; i >= 0; i--) {
+                final Map<String, Object> map = new LinkedHashMap<>();
+                map.put("value", i);
+                map.put("next", data);
+                map.put("others", List.of(Map.of("value", -i)));
+                data = map;
+            }
+            final Link link = grammar.unmarshal(Link.class, data);
+            Link current = link;
+            for (int i = 0; i < DEPTH; i++) {
+                assert current.value == i;
+                assert current.others[0].value == -i;
+                current = current.next;
+            }
+            assert current == null;
+            final Map<String, Object> map = grammar.marshal(link);
+            assert map.get("value").equals(0);
+            assert map.get("next") instanceof Map<?, ?> next && next.get("value").equals(1);
+        });
+    }
+
+    @Test
+    public void testSharedRecordData() {
+        final Grammar grammar = new Grammar();
+        grammar.iterative = true;
+        final Map<String, Object> empty = Map.of();
+        final Pair pair = grammar.unmarshal(Pair.class, Map.of("a", empty, "b", empty));
+        assert pair.a != null && pair.b != null;
+    }
+
+    @Test
+    public void testDepthLimit() {
+        final Grammar grammar = new Grammar();
+        grammar.iterative = true;
+        grammar.limits = new Limits(50, 0, 0, 0);
+        Map<String, Object> nodes = null, links = null;
+        for (int i = 0; i < 100; i++) {
+            final Map<String, Object> node = new LinkedHashMap<>(), link = new LinkedHashMap<>();
+            node.put("next", nodes);
+            link.put("next", links);
+            nodes = node;
+            links = link;
+        }
+        for (Class<?> type : List.of(Node.class, Link.class)) {
+            try {
+                grammar.unmarshal(type, type == Node.class ? nodes : links);
+                assert false : type + " should exceed the depth limit";
+            } catch (LimitException expected) {
+            }
+        }
+        grammar.limits = new Limits(200, 0, 0, 0);
+        assert grammar.unmarshal(Node.class, nodes).next != null;
+        assert grammar.unmarshal(Link.class, links).next != null;
+    }
+
+    @Test
+    public void testCanonicalRecords() {
+        final Grammar grammar = new Grammar();
+        grammar.iterative = true;
+        grammar.canonicalise(1024);
+        final Map<String, Object> euro = Map.of("money", Map.of("currency", "EUR"), "amount", 1);
+        final Map<String, Object> dollar = Map.of("money", Map.of("currency", "USD"), "amount", 1);
+        final Map<String, Object> label = Map.of("a", Map.of("x", 1), "b", Map.of("y", "label"));
+        final Ledger ledger = grammar.unmarshal(Ledger.class, Map.of("rows", List.of(euro, dollar),
+            "pairs", List.of(label, new LinkedHashMap<>(label))));
+        assert ledger.rows.get(0) != ledger.rows.get(1);
+        assert ledger.rows.get(0).money.currency.equals("EUR") && ledger.rows.get(1).money.currency.equals("USD");
+        assert ledger.pairs.get(0) == ledger.pairs.get(1); // records without pending objects are still shared
+    }
+
+    public static class Money {
+        public String currency;
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Money money && Objects.equals(currency, money.currency);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(currency);
+        }
+    }
+
+    public record Row(Money money, int amount) {
+    }
+
+    public static class Ledger {
+        public List<Row> rows;
+        public List<Pair> pairs;
+    }
+
+    public static class Node {
+        public int value;
+        public Node next;
+        public List<Node> children;
+    }
+
+    public record Link(int value, Link next, Link... others) {
+    }
+
+    public record A(int x) {
+    }
+
+    public record B(String y) {
+    }
+
+    public record Pair(A a, B b) {
+    }
+
+}
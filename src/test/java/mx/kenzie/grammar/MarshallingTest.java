@@ -43,4 +43,37 @@ public class MarshallingTest {
         assert repeat.word.equals("blob");
     }
 
+    @Test
+    public void testStreamed() {
+        class Thing implements StreamMarshalled {
+            public int number;
+            protected String word = "test";
+
+            @Override
+            public void serialise(Sink sink) throws GrammarException {
+                sink.write("number", number);
+                sink.write("foo", word);
+            }
+
+            @Override
+            public void deserialise(Source source) throws GrammarException {
+                this.number = source.readInt("number", number);
+                this.word = source.readString("foo", word);
+            }
+        }
+        final Thing thing = new Thing();
+        thing.number = 6;
+        final Grammar grammar = new Grammar();
+        final Map<String, Object> map = grammar.marshal(thing);
+        assert map.size() == 2;
+        assert map.get("number").equals(6);
+        assert map.get("foo").equals("test");
+        assert thing.serialise().equals(map);
+        map.put("foo", "blob");
+        map.put("number", 7L);
+        final Thing repeat = grammar.unmarshal(Thing.class, map);
+        assert repeat.number == 7;
+        assert repeat.word.equals("blob");
+    }
+
 }